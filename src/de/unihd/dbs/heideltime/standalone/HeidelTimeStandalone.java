@@ -37,12 +37,12 @@ import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.apache.uima.util.XMLInputSource;
 
-import de.unihd.dbs.heideltime.standalone.components.JCasFactory;
 import de.unihd.dbs.heideltime.standalone.components.ResultFormatter;
 import de.unihd.dbs.heideltime.standalone.components.PartOfSpeechTagger;
 import de.unihd.dbs.heideltime.standalone.components.impl.HunPosTaggerWrapper;
 import de.unihd.dbs.heideltime.standalone.components.impl.IntervalTaggerWrapper;
 import de.unihd.dbs.heideltime.standalone.components.impl.JCasFactoryImpl;
+import de.unihd.dbs.heideltime.standalone.components.impl.PooledJCasFactory;
 import de.unihd.dbs.heideltime.standalone.components.impl.JVnTextProWrapper;
 import de.unihd.dbs.heideltime.standalone.components.impl.NERTimeResultFormatter;
 import de.unihd.dbs.heideltime.standalone.components.impl.StanfordCoreNLPWrapper;
@@ -79,7 +79,7 @@ public class HeidelTimeStandalone {
 	/**
 	 * Type system description of HeidelTime
 	 */
-	private JCasFactory jcasFactory;
+	private PooledJCasFactory jcasFactory;
 
 	/**
 	 * Used language
@@ -270,7 +270,7 @@ public class HeidelTimeStandalone {
 											.getResource(
 													"desc/type/NERDATypes.xml")))};
 			
-			jcasFactory = new JCasFactoryImpl(descriptions);
+			jcasFactory = new PooledJCasFactory(new JCasFactoryImpl(descriptions), 1);
 			logger.log(Level.INFO, "JCas factory initialized");
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -513,41 +513,46 @@ public class HeidelTimeStandalone {
 			logger.log(Level.WARNING, "Cas object could not be generated");
 		}
 
-		// Process jcas object -----------
+		String result = null;
 		try {
-			logger.log(Level.FINER, "Establishing preconditions...");
-			provideDocumentCreationTime(jcas, documentCreationTime);
+			// Process jcas object -----------
+			try {
+				logger.log(Level.FINER, "Establishing preconditions...");
+				provideDocumentCreationTime(jcas, documentCreationTime);
 			
-			//-
-			establishHeidelTimePreconditions(jcas);
+				//-
+				establishHeidelTimePreconditions(jcas);
 			
-			logger.log(Level.FINER, "Preconditions established");
+				logger.log(Level.FINER, "Preconditions established");
 
-			heidelTime.process(jcas);
+				heidelTime.process(jcas);
 
-			logger.log(Level.INFO, "Processing finished");
-		} catch (Exception e) {
-			e.printStackTrace();
-			logger.log(Level.WARNING, "Processing aborted due to errors");
-		}
+				logger.log(Level.INFO, "Processing finished");
+			} catch (Exception e) {
+				e.printStackTrace();
+				logger.log(Level.WARNING, "Processing aborted due to errors");
+			}
 
-		// process interval tagging ---
-		if(doIntervalTagging)
-			runIntervalTagger(jcas);
+			// process interval tagging ---
+			if(doIntervalTagging)
+				runIntervalTagger(jcas);
 		
-		// Process results ---------------
-		logger.log(Level.FINE, "Formatting result...");
-		// PrintAnnotations.printAnnotations(jcas.getCas(), System.out);
-		String result = null;
-		try {
-			//System.out.println(jcas..toString());
+			// Process results ---------------
+			logger.log(Level.FINE, "Formatting result...");
+			// PrintAnnotations.printAnnotations(jcas.getCas(), System.out);
+			try {
+				//System.out.println(jcas..toString());
 			
-			//--
-			result = resultFormatter.format(jcas);
-			logger.log(Level.INFO, "Result formatted");
-		} catch (Exception e) {
-			e.printStackTrace();
-			logger.log(Level.WARNING, "Result could not be formatted");
+				//--
+				result = resultFormatter.format(jcas);
+				logger.log(Level.INFO, "Result formatted");
+			} catch (Exception e) {
+				e.printStackTrace();
+				logger.log(Level.WARNING, "Result could not be formatted");
+			}
+		} finally {
+			// Reuse jcas object -------------
+			jcasFactory.release(jcas);
 		}
 
 		return result;
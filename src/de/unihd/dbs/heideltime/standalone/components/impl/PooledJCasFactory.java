@@ -0,0 +1,85 @@
+package de.unihd.dbs.heideltime.standalone.components.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.uima.cas.CASException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+
+import de.unihd.dbs.heideltime.standalone.components.JCasFactory;
+
+/**
+ * Hands out a bounded number of JCas objects, which are reset and reused once released,
+ * rather than building a new CAS (heap, index repository, etc.) per document.
+ *
+ * createJCas() blocks while all of them are in use, i.e., until release() is called by another thread.
+ *
+ * @see JCasFactory
+ */
+public class PooledJCasFactory implements JCasFactory {
+
+	/**
+	 * Creates the pooled objects
+	 */
+	private JCasFactory jcasFactory;
+
+	/**
+	 * Released objects, ready for reuse
+	 */
+	private BlockingQueue<JCas> idleJCasQueue;
+
+	private int poolSize;
+	private int createdNum = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param jcasFactory the factory of the pooled objects
+	 * @param poolSize the maximum number of objects in use at the same time
+	 */
+	public PooledJCasFactory(JCasFactory jcasFactory, int poolSize) {
+		this.jcasFactory = jcasFactory;
+		this.poolSize = Math.max(1, poolSize);
+		this.idleJCasQueue = new ArrayBlockingQueue<JCas>(this.poolSize);
+	}
+
+	@Override
+	public JCas createJCas() throws CASException,
+			ResourceInitializationException {
+
+		JCas jcas = idleJCasQueue.poll();
+		if (jcas != null) {
+			return jcas;
+		}
+
+		synchronized (this) {
+			if (createdNum < poolSize) {
+				jcas = jcasFactory.createJCas();
+				createdNum++;
+				return jcas;
+			}
+		}
+
+		try {
+			return idleJCasQueue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	/**
+	 * Resets the given object and makes it available to createJCas() again
+	 *
+	 * @param jcas an object obtained from createJCas(), ignored if null
+	 */
+	public void release(JCas jcas) {
+		if (jcas == null) {
+			return;
+		}
+
+		jcas.reset();
+		idleJCasQueue.offer(jcas);
+	}
+}
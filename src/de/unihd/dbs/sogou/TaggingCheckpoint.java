@@ -0,0 +1,88 @@
+package de.unihd.dbs.sogou;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import de.unihd.dbs.uima.reader.sogou.DocPosition;
+
+/**
+ * The progress of a tagging run, committed whenever an output file is finished, so that a crashed run can be resumed.
+ *
+ * The checkpoint is first written into a temporary file, which then replaces the previous checkpoint by an atomic rename,
+ * i.e., a crash never leaves a partially written checkpoint behind.
+ * **/
+public class TaggingCheckpoint {
+
+	private static final String FINISHED_DOC_NUM = "finishedDocNum";
+	private static final String LAST_FILE = "lastFile";
+	private static final String LAST_DOC_INDEX = "lastDocIndex";
+	private static final String FINISHED = "finished";
+
+	//the number of documents in the finished output files
+	public int finishedDocNum = 0;
+
+	//the input position of the last document in the finished output files, null if none
+	public DocPosition lastPosition = null;
+
+	//whether the whole run is done
+	public boolean finished = false;
+
+	/**
+	 * @return the checkpoint stored in the given file, or null if there is none
+	 * **/
+	public static TaggingCheckpoint load(File file) throws IOException {
+
+		if(!file.exists()){
+			return null;
+		}
+
+		Properties props = new Properties();
+		FileInputStream inStream = new FileInputStream(file);
+		try {
+			props.load(inStream);
+		} finally {
+			inStream.close();
+		}
+
+		TaggingCheckpoint checkpoint = new TaggingCheckpoint();
+		checkpoint.finishedDocNum = Integer.parseInt(props.getProperty(FINISHED_DOC_NUM, "0"));
+		if(null != props.getProperty(LAST_FILE)){
+			checkpoint.lastPosition = new DocPosition(props.getProperty(LAST_FILE), Integer.parseInt(props.getProperty(LAST_DOC_INDEX)));
+		}
+		checkpoint.finished = Boolean.parseBoolean(props.getProperty(FINISHED, "false"));
+
+		return checkpoint;
+	}
+
+	/**
+	 * atomically replaces the given file with this checkpoint
+	 * **/
+	public void commit(File file) throws IOException {
+
+		Properties props = new Properties();
+		props.setProperty(FINISHED_DOC_NUM, Integer.toString(finishedDocNum));
+		if(null != lastPosition){
+			props.setProperty(LAST_FILE, lastPosition.getFileName());
+			props.setProperty(LAST_DOC_INDEX, Integer.toString(lastPosition.getDocIndex()));
+		}
+		props.setProperty(FINISHED, Boolean.toString(finished));
+
+		File tmpFile = new File(file.getAbsoluteFile().getParentFile(), file.getName()+".tmp");
+
+		FileOutputStream outStream = new FileOutputStream(tmpFile);
+		try {
+			props.store(outStream, "progress of TemSogouTagger");
+			outStream.flush();
+			outStream.getFD().sync();
+		} finally {
+			outStream.close();
+		}
+
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,47 @@
+package de.unihd.dbs.sogou;
+
+import de.unihd.dbs.uima.reader.sogou.FilePartition;
+
+/**
+ * The optional settings of TemSogouTagger, the defaults are the same as running without them
+ * **/
+public class TaggingOptions {
+
+	//the maximum number of documents read and parsed ahead by a background thread, 0 for no prefetching
+	public int prefetchSize = 0;
+
+	//the slice of the input files to be tagged, null for all
+	public FilePartition partition = null;
+
+	//the number of threads that tag documents concurrently, each with its own annotators (sharing the Stanford models)
+	public int threadNum = 1;
+
+	//whether to continue from the checkpoint of a previous run in the same output directory
+	public boolean resume = false;
+
+	//the time budgets (in milliseconds) of tagging a document and a sentence, 0 for no limit;
+	//a document over budget is tagged again in short chunks, and quarantined if it is still over budget
+	public long docBudgetMillis = 0;
+	public long sentenceBudgetMillis = 0;
+
+	//whether the Stanford components run one after another over all the sentences of a document rather than per sentence, the output is the same
+	public boolean batchSentences = false;
+
+	//sentences longer than this (in characters) are tagged in chunks cut at clause punctuations, or in overlapping windows, 0 for no limit
+	public int maxSentenceLength = 0;
+
+	//whether the sentences are split by SentenceBoundaryScanner, i.e., not within decimals, urls, abbreviations and ellipses, rather than at every dot
+	public boolean boundaryScanner = false;
+
+	//whether the pos tagger only tags the sentences whose timexes need the pos, e.g., for the tense of an ambiguous date
+	public boolean lazyPartOfSpeech = false;
+
+	//whether HeidelTime matches the rules of a type in one scan of a sentence by its RuleAutomaton, rather than by java.util.regex rule by rule
+	public boolean ruleAutomaton = false;
+
+	//the maximum number of sentences whose Stanford results are cached for recurring sentences, e.g., bylines, 0 for no caching
+	public int sentenceCacheSize = 0;
+
+	//the seconds between two summary lines of the throughput and the stage latencies, 0 for none
+	public long metricsIntervalSeconds = 0;
+}
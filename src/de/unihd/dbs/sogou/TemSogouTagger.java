@@ -6,26 +6,45 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.uima.UIMAFramework;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FSIterator;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.apache.uima.util.XMLInputSource;
+import org.archive.util.metrics.PipelineMetrics;
+import org.archive.util.metrics.Stage;
+import org.archive.util.time.TimeBudget;
+import org.archive.util.time.TimeBudgetExceededException;
+import org.archive.util.time.Watchdog;
 
 import de.unihd.dbs.heideltime.standalone.Config;
 import de.unihd.dbs.heideltime.standalone.DocumentType;
-import de.unihd.dbs.heideltime.standalone.components.JCasFactory;
 import de.unihd.dbs.heideltime.standalone.components.impl.JCasFactoryImpl;
+import de.unihd.dbs.heideltime.standalone.components.impl.PooledJCasFactory;
 import de.unihd.dbs.heideltime.standalone.components.impl.UimaContextImpl;
 import de.unihd.dbs.heideltime.standalone.exceptions.DocumentCreationTimeMissingException;
 import de.unihd.dbs.uima.annotator.heideltime.HeidelTime;
 import de.unihd.dbs.uima.annotator.heideltime.resources.Language;
+import de.unihd.dbs.uima.annotator.stanfordtagger.SentenceCache;
 import de.unihd.dbs.uima.annotator.stanfordtagger.StanfordCoreNLPWrapper;
 import de.unihd.dbs.uima.consumer.sogou.SogouTCollectionWriter;
+import de.unihd.dbs.uima.reader.sogou.DocPosition;
 import de.unihd.dbs.uima.reader.sogou.SogouTCollectionReader;
 import de.unihd.dbs.uima.types.heideltime.Dct;
+import de.unihd.dbs.uima.types.heideltime.SourceDocInfo;
 
 public class TemSogouTagger {
 	
@@ -36,9 +55,9 @@ public class TemSogouTagger {
 	 */
 	private HeidelTime heidelTime;
 	/**
-	 * Type system description
+	 * Type system description, the JCas objects are reused once the documents are printed
 	 */
-	private JCasFactory jcasFactory;
+	private PooledJCasFactory jcasFactory;
 	
 	private StanfordCoreNLPWrapper stanfordCoreNLPWrapper;
 	//
@@ -52,21 +71,107 @@ public class TemSogouTagger {
 	SogouTCollectionReader sogouReader;
 	SogouTCollectionWriter sogouWriter;
 	
+	//the number of recently tagged texts kept for the near-duplicate documents linked to them
+	private static final int taggedTextCacheSize = 2000;
+	
+	//docno -> tagged text (or quarantine), in least-recently-used order
+	private LruCache<CanonicalOutput> taggedTextCache = new LruCache<CanonicalOutput>(taggedTextCacheSize);
+	
+	private int copiedDoc;
+	
+	//the number of threads that tag documents concurrently, 1 for tagging within the calling thread
+	private int threadNum;
+	//the capacity of the queues between the stages, per tagging thread
+	private static final int queuedJobsPerThread = 4;
+	//passed on by each tagging thread to the next one, i.e., no more jobs
+	private static final TaggingJob END_OF_JOBS = new TaggingJob(-1, null, null, null);
+	
+	//the first failure of the reader thread of runConcurrently(), null if all the documents are read
+	private volatile Throwable readingFailure = null;
+	
+	//the progress committed whenever an output file is finished
+	private File checkpointFile;
+	//the input position of the last printed document
+	private DocPosition lastPrintedPosition = null;
+	//a resumed run that had been finished before
+	private boolean finishedBefore = false;
+	
+	//the time budgets of tagging a document and a sentence, 0 for no limit
+	private long docBudgetMillis;
+	private long sentenceBudgetMillis;
+	//reports the tagging threads stuck over their budgets, null if there is no budget
+	private Watchdog watchdog = null;
+	//a document over budget is tagged again with its sentences cut into chunks of this length
+	private static final int degradedSentenceLength = 64;
+	
+	private AtomicInteger overBudgetDoc = new AtomicInteger();
+	private AtomicInteger degradedDoc = new AtomicInteger();
+	private int quarantinedDoc;
+	
+	//the throughput and the per-document stage latencies, also exposed as MBeans
+	private PipelineMetrics metrics = new PipelineMetrics("TemSogouTagger");
+	//in the order of the pipeline, i.e., of the summary line
+	private static final String [] stageNames = {"read", "segmentation", "pos", "ner",
+		"heideltime-extraction", "heideltime-disambiguation", "formatting", "write"};
+	//including the wait for a free JCas, i.e., for the tagging threads
+	private Stage readStage;
+	//between two summary lines, 0 for none
+	private long metricsIntervalMillis;
+	
+	//whether each Stanford component tags all the sentences of a document before the next one starts
+	private boolean batchSentences;
+	
+	//sentences longer than this are tagged in chunks, 0 for no limit
+	private int maxSentenceLength;
+	//whether the sentences are split by SentenceBoundaryScanner
+	private boolean boundaryScanner;
+	//whether only the sentences that HeidelTime asks for are pos tagged
+	private boolean lazyPartOfSpeech;
+	//whether HeidelTime matches the rules by their RuleAutomaton
+	private boolean ruleAutomaton;
+	
+	//the results of recurring sentences shared by the tagging threads, null for no caching
+	private SentenceCache sentenceCache = null;
+	
 	
 	public TemSogouTagger(String inDir, String outDir){
+		this(inDir, outDir, new TaggingOptions());
+	}
+	
+	/**
+	 * @param options the optional settings, e.g., prefetching and the partition of the input files
+	 * **/
+	public TemSogouTagger(String inDir, String outDir, TaggingOptions options){
 		
 		readConfigFile("conf/config.props");
 		
-		//1
-		try {
-			
-			heidelTime = new HeidelTime();
-			heidelTime.initialize(new UimaContextImpl(Language.CHINESE, DocumentType.NEWS));
-			
-		} catch (Exception e) {
-			e.printStackTrace();
-			System.err.println("HeidelTime could not be initialized !");			
+		threadNum = Math.max(1, options.threadNum);
+		
+		docBudgetMillis = options.docBudgetMillis;
+		sentenceBudgetMillis = options.sentenceBudgetMillis;
+		if(docBudgetMillis > 0 || sentenceBudgetMillis > 0){
+			watchdog = new Watchdog(1000);
 		}
+		
+		metricsIntervalMillis = options.metricsIntervalSeconds*1000L;
+		batchSentences = options.batchSentences;
+		maxSentenceLength = Math.max(0, options.maxSentenceLength);
+		boundaryScanner = options.boundaryScanner;
+		lazyPartOfSpeech = options.lazyPartOfSpeech;
+		ruleAutomaton = options.ruleAutomaton;
+		for(String stageName: stageNames){
+			metrics.getStage(stageName);
+		}
+		readStage = metrics.getStage("read");
+		metrics.registerMBeans();
+		
+		if(options.sentenceCacheSize > 0){
+			sentenceCache = new SentenceCache(options.sentenceCacheSize);
+			metrics.registerMBean("SentenceCache", sentenceCache);
+		}
+		
+		//1
+		heidelTime = newHeidelTime();
 		//2
 		// Initialize JCas factory -------------
 		try {
@@ -85,7 +190,8 @@ public class TemSogouTagger {
 					.parseTypeSystemDescription(
 							new XMLInputSource(new File("desc/type/NERDATypes.xml")))};
 			
-			jcasFactory = new JCasFactoryImpl(descriptions);
+			//one JCas per queued or running job at most
+			jcasFactory = new PooledJCasFactory(new JCasFactoryImpl(descriptions), threadNum>1 ? threadNum*queuedJobsPerThread : 1);
 			
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -93,8 +199,7 @@ public class TemSogouTagger {
 		}
 		//3
 		try {
-			stanfordCoreNLPWrapper = new StanfordCoreNLPWrapper();
-			stanfordCoreNLPWrapper.initialize();
+			stanfordCoreNLPWrapper = newStanfordCoreNLPWrapper();
 			
 			//
 			/*
@@ -108,15 +213,70 @@ public class TemSogouTagger {
 			*/
 			
 			
+			String partitionLabel = null==options.partition ? null : options.partition.getLabel();
+			
+			checkpointFile = SogouTCollectionWriter.getCheckpointFile(outDir, partitionLabel);
+			TaggingCheckpoint checkpoint = null;
+			if(options.resume){
+				checkpoint = TaggingCheckpoint.load(checkpointFile);
+				if(null == checkpoint){
+					System.out.println("No checkpoint found, tagging from the beginning!");
+				}else{
+					System.out.println("Resuming after:\t"+checkpoint.lastPosition+"\twith finished documents:\t"+checkpoint.finishedDocNum);
+					finishedBefore = checkpoint.finished;
+					lastPrintedPosition = checkpoint.lastPosition;
+				}
+			}else{
+				//a stale checkpoint of a previous run must not be resumed from
+				checkpointFile.delete();
+			}
+			
 			sogouReader = new SogouTCollectionReader();
-			sogouReader.initialize(inDir);
+			sogouReader.initialize(inDir, options.prefetchSize, options.partition, null==checkpoint ? null : checkpoint.lastPosition);
 			
 			sogouWriter = new SogouTCollectionWriter();
-			sogouWriter.initialize(outDir);
+			sogouWriter.initialize(outDir, partitionLabel, null==checkpoint ? 0 : checkpoint.finishedDocNum);
+			sogouWriter.setMetrics(metrics);
 		} catch (Exception e) {
 			System.err.println("IO error!");
 		}		
 	}
+	
+	//the annotators are owned by one thread, while the rule and normalization resources behind them are shared
+	private HeidelTime newHeidelTime(){
+		HeidelTime heidelTime = null;
+		try {
+			
+			heidelTime = new HeidelTime();
+			heidelTime.initialize(new UimaContextImpl(Language.CHINESE, DocumentType.NEWS));
+			heidelTime.setMetrics(metrics);
+			heidelTime.setRuleAutomaton(ruleAutomaton);
+			
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.err.println("HeidelTime could not be initialized !");			
+		}
+		return heidelTime;
+	}
+	//with its own time budget, if any
+	private StanfordCoreNLPWrapper newStanfordCoreNLPWrapper(){
+		StanfordCoreNLPWrapper stanfordCoreNLPWrapper = new StanfordCoreNLPWrapper();
+		stanfordCoreNLPWrapper.initialize();
+		stanfordCoreNLPWrapper.setMetrics(metrics);
+		stanfordCoreNLPWrapper.setBatchSentences(batchSentences);
+		stanfordCoreNLPWrapper.setSentenceCache(sentenceCache);
+		stanfordCoreNLPWrapper.setMaxSentenceLength(maxSentenceLength);
+		stanfordCoreNLPWrapper.setBoundaryScanner(boundaryScanner);
+		stanfordCoreNLPWrapper.setLazyPartOfSpeech(lazyPartOfSpeech);
+		
+		if(null != watchdog){
+			TimeBudget timeBudget = new TimeBudget(docBudgetMillis, sentenceBudgetMillis);
+			stanfordCoreNLPWrapper.setTimeBudget(timeBudget);
+			watchdog.watch(timeBudget);
+		}
+		
+		return stanfordCoreNLPWrapper;
+	}
 	//
 	public void readConfigFile(String configPath) {
 		InputStream configStream = null;
@@ -142,16 +302,74 @@ public class TemSogouTagger {
 	public void run(){
 		//int i=1;
 		try {
-			while(sogouReader.hasNext()){
-				
-				JCas jcas = sogouReader.getNext(jcasFactory);
+			if(finishedBefore){
+				System.out.println("Already finished according to:\t"+checkpointFile.getAbsolutePath());
+				sogouReader.close();
+				return;
+			}
+			
+			if(null != watchdog){
+				watchdog.start();
+			}
+			
+			if(threadNum > 1){
+				runConcurrently();
+			}else{
+				metrics.start(metricsIntervalMillis);
 				
-				process(jcas);
-				//System.out.println((i++));
-				sogouWriter.printDocuments(jcas);
+				long readStartNanos = System.nanoTime();
+				while(sogouReader.hasNext()){
+					
+					JCas jcas = sogouReader.getNext(jcasFactory);
+					DocPosition position = sogouReader.getLastPosition();
+					readStage.record(System.nanoTime()-readStartNanos);
+					
+					//a near-duplicate document shares the tagged text of its canonical document if it is still cached
+					SourceDocInfo docInfo = getSourceDocInfo(jcas);
+					CanonicalOutput canonicalOutput = getCanonicalOutput(docInfo);
+					boolean quarantined = (null != canonicalOutput && canonicalOutput.quarantined);
+					
+					if(null == canonicalOutput){
+						quarantined = !process(stanfordCoreNLPWrapper, heidelTime, jcas);
+						//System.out.println((i++));
+					}
+					
+					if(quarantined){
+						quarantineDocument(jcas, docInfo);
+					}else{
+						printDocument(jcas, docInfo, null==canonicalOutput ? null : canonicalOutput.taggedText, position);
+					}
+					jcasFactory.release(jcas);
+					readStartNanos = System.nanoTime();
+				}
 			}
 			
+			if(null != watchdog){
+				watchdog.stop();
+			}
+			metrics.stop();
+			
 			sogouWriter.collectionProcessComplete(null);
+			sogouReader.close();
+			
+			commitCheckpoint(true);
+			
+			if(copiedDoc > 0){
+				System.out.println("Total number of near-duplicate documents copied from the canonical ones:\t"+copiedDoc);
+			}
+			
+			if(overBudgetDoc.get() > 0){
+				System.out.println("Total number of documents over the time budget:\t"+overBudgetDoc.get());
+				System.out.println("Total number of documents tagged again in chunks:\t"+degradedDoc.get());
+				System.out.println("Total number of quarantined documents (including their near-duplicates):\t"+quarantinedDoc);
+			}
+			
+			System.out.println(metrics.getSummary());
+			
+			if(null != sentenceCache){
+				System.out.println(String.format(Locale.US, "Sentence cache:\t%d hits\t%d misses\thit rate %.3f\t%d cached sentences",
+						sentenceCache.getHitCount(), sentenceCache.getMissCount(), sentenceCache.getHitRate(), sentenceCache.getSize()));
+			}
 			
 			//System.out.println(stanfordCoreNLPWrapper.nerTagsHashSet);
 			
@@ -162,20 +380,307 @@ public class TemSogouTagger {
 		
 	}
 
+	/**
+	 * reader -> tagging threads -> writer, connected by bounded queues;
+	 * each tagging thread owns its annotators, and the writer restores the reading order, thus the output files are the same as run() within one thread
+	 * 
+	 * @throws IOException if the reader fails, after the documents read before are written, i.e., the checkpoint is not committed as finished
+	 * **/
+	private void runConcurrently() throws InterruptedException, IOException{
+		
+		final BlockingQueue<TaggingJob> jobQueue = new ArrayBlockingQueue<TaggingJob>(threadNum*queuedJobsPerThread);
+		final BlockingQueue<TaggingJob> doneQueue = new ArrayBlockingQueue<TaggingJob>(threadNum*queuedJobsPerThread);
+		
+		ArrayList<Thread> threadList = new ArrayList<Thread>();
+		
+		//1 tagging threads, the first one uses the annotators initialized by the constructor
+		for(int k=0; k<threadNum; k++){
+			final StanfordCoreNLPWrapper workerWrapper = (0==k) ? stanfordCoreNLPWrapper : newStanfordCoreNLPWrapper();
+			final HeidelTime workerHeidelTime = (0==k) ? heidelTime : newHeidelTime();
+			
+			threadList.add(new Thread("SogouTagger-"+k){
+				@Override
+				public void run() {
+					try {
+						TaggingJob job;
+						while(END_OF_JOBS != (job=jobQueue.take())){
+							//the writer waits for every job in the reading order, thus a job is passed on whatever happens
+							try {
+								if(!job.copy){
+									job.quarantined = !process(workerWrapper, workerHeidelTime, job.jcas);
+								}
+							} catch (Throwable t) {
+								t.printStackTrace();
+								System.err.println("Tagging error, quarantined:\t"+getDocId(job.jcas));
+								job.quarantined = true;
+							}
+							doneQueue.put(job);
+						}
+						jobQueue.put(END_OF_JOBS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+		
+		//2 reader, which also decides which near-duplicate documents will be copied,
+		//by replaying the accesses of taggedTextCache in the reading order
+		threadList.add(new Thread("SogouReader"){
+			@Override
+			public void run() {
+				LruCache<Boolean> cachedDocnos = new LruCache<Boolean>(taggedTextCacheSize);
+				long jobCount = 0;
+				try {
+					try {
+						long readStartNanos = System.nanoTime();
+						while(sogouReader.hasNext()){
+							
+							JCas jcas = sogouReader.getNext(jcasFactory);
+							readStage.record(System.nanoTime()-readStartNanos);
+							SourceDocInfo docInfo = getSourceDocInfo(jcas);
+							
+							TaggingJob job = new TaggingJob(jobCount++, jcas, docInfo, sogouReader.getLastPosition());
+							if(null != docInfo){
+								if(null == docInfo.getCanonical()){
+									cachedDocnos.put(docInfo.getId(), Boolean.TRUE);
+								}else{
+									job.copy = (null != cachedDocnos.get(docInfo.getCanonical()));
+								}
+							}
+							
+							jobQueue.put(job);
+							readStartNanos = System.nanoTime();
+						}
+					} catch (InterruptedException e) {
+						throw e;
+					} catch (Throwable t) {
+						//the documents read so far are still written, then runConcurrently() fails
+						t.printStackTrace();
+						readingFailure = t;
+					}
+					
+					jobQueue.put(END_OF_JOBS);
+					//tells the writer the total number of jobs
+					doneQueue.put(new TaggingJob(jobCount, null, null, null));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		
+		//once the annotators of all tagging threads are loaded
+		metrics.start(metricsIntervalMillis);
+		
+		for(Thread thread: threadList){
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		//3 writer, within the calling thread
+		try {
+			HashMap<Long, TaggingJob> reorderBuffer = new HashMap<Long, TaggingJob>();
+			long nextSeq = 0;
+			long jobCount = -1;
+			
+			while(jobCount<0 || nextSeq<jobCount){
+				TaggingJob job = doneQueue.take();
+				
+				if(null == job.jcas){
+					jobCount = job.seq;
+					continue;
+				}
+				
+				reorderBuffer.put(job.seq, job);
+				while(null != (job=reorderBuffer.remove(nextSeq))){
+					CanonicalOutput canonicalOutput = job.copy ? getCanonicalOutput(job.docInfo) : null;
+					//e.g., the tagged text of the canonical document could not be formatted, thus it was not cached as the reader predicted;
+					//the document has not been tagged, and is quarantined rather than written untagged
+					boolean notCached = (job.copy && null == canonicalOutput);
+					if(notCached){
+						System.err.println("Canonical document not cached, quarantined:\t"+job.docInfo.getId());
+					}
+					
+					if(job.quarantined || notCached || (null != canonicalOutput && canonicalOutput.quarantined)){
+						quarantineDocument(job.jcas, job.docInfo);
+					}else{
+						printDocument(job.jcas, job.docInfo, null==canonicalOutput ? null : canonicalOutput.taggedText, job.position);
+					}
+					jcasFactory.release(job.jcas);
+					nextSeq++;
+				}
+			}
+		} finally {
+			for(Thread thread: threadList){
+				thread.interrupt();
+			}
+		}
+		
+		if(null != readingFailure){
+			throw new IOException("Reading error, the rest of the documents are not tagged!", readingFailure);
+		}
+	}
+	
+	/**
+	 * @return the cached output of the canonical document, or null if the given document is a canonical one or the output is not cached
+	 * **/
+	private CanonicalOutput getCanonicalOutput(SourceDocInfo docInfo){
+		return (null==docInfo || null==docInfo.getCanonical()) ? null : taggedTextCache.get(docInfo.getCanonical());
+	}
+	
+	/**
+	 * prints a tagged document, or a near-duplicate document with the given tagged text of its canonical document,
+	 * and commits the checkpoint if an output file is finished
+	 * **/
+	private void printDocument(JCas jcas, SourceDocInfo docInfo, String canonicalText, DocPosition position){
+		metrics.recordDocument(jcas.getDocumentText().length());
+		
+		if(null != canonicalText){
+			copiedDoc++;
+			sogouWriter.printDocuments(jcas, canonicalText);
+		}else{
+			String taggedText = sogouWriter.printDocuments(jcas, null);
+			
+			if(null!=docInfo && null==docInfo.getCanonical() && null!=taggedText){
+				taggedTextCache.put(docInfo.getId(), new CanonicalOutput(taggedText, false));
+			}
+		}
+		
+		lastPrintedPosition = position;
+		if(sogouWriter.isFileFinished()){
+			commitCheckpoint(false);
+		}
+	}
+	
+	/**
+	 * prints a document that could not be tagged within the time budget into the quarantine file
+	 * **/
+	private void quarantineDocument(JCas jcas, SourceDocInfo docInfo){
+		metrics.recordDocument(jcas.getDocumentText().length());
+		
+		quarantinedDoc++;
+		sogouWriter.printQuarantined(jcas);
+		
+		if(null!=docInfo && null==docInfo.getCanonical()){
+			taggedTextCache.put(docInfo.getId(), new CanonicalOutput(null, true));
+		}
+	}
+	
+	/**
+	 * records the finished output files and the input position to resume after
+	 * **/
+	private void commitCheckpoint(boolean finished){
+		TaggingCheckpoint checkpoint = new TaggingCheckpoint();
+		checkpoint.finishedDocNum = sogouWriter.getDocCount();
+		checkpoint.lastPosition = lastPrintedPosition;
+		checkpoint.finished = finished;
+		
+		try {
+			checkpoint.commit(checkpointFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Checkpoint error!");
+		}
+	}
+	
 	//
-	private void process(JCas jcas){
+	private static SourceDocInfo getSourceDocInfo(JCas jcas){
+		FSIterator it = jcas.getAnnotationIndex(SourceDocInfo.type).iterator();
+		return it.hasNext() ? (SourceDocInfo)it.next() : null;
+	}
+	
+	/**
+	 * tags a document within the time budget, if any; a document over budget is tagged again with its sentences cut into short chunks.
+	 * The budget is checked per sentence by both the Stanford wrapper and HeidelTime, i.e., the retry overruns it by one call on one chunk at most.
+	 * 
+	 * @return false if the document is still over budget, i.e., to be quarantined
+	 * **/
+	private boolean process(StanfordCoreNLPWrapper stanfordCoreNLPWrapper, HeidelTime heidelTime, JCas jcas){
+		try {
+			
+			try {
+				tag(stanfordCoreNLPWrapper, heidelTime, jcas);
+				return true;
+			} catch (TimeBudgetExceededException e) {
+				overBudgetDoc.incrementAndGet();
+				System.err.println(e.getMessage()+", tagged again in chunks:\t"+getDocId(jcas));
+			}
+			
+			removeTaggings(jcas);
+			stanfordCoreNLPWrapper.setMaxSentenceLength(boundSentenceLength(degradedSentenceLength));
+			try {
+				tag(stanfordCoreNLPWrapper, heidelTime, jcas);
+				degradedDoc.incrementAndGet();
+				return true;
+			} catch (TimeBudgetExceededException e) {
+				System.err.println(e.getMessage()+", quarantined:\t"+getDocId(jcas));
+				return false;
+			} finally {
+				stanfordCoreNLPWrapper.setMaxSentenceLength(maxSentenceLength);
+			}
+			
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.err.println("Process ereor!");
+		}
+		
+		return true;
+	}
+	
+	//maxSentenceLength, but at most the given length
+	private int boundSentenceLength(int length){
+		return 0==maxSentenceLength ? length : Math.min(maxSentenceLength, length);
+	}
+	
+	//
+	private static void tag(StanfordCoreNLPWrapper stanfordCoreNLPWrapper, HeidelTime heidelTime, JCas jcas) throws Exception {
+		TimeBudget timeBudget = stanfordCoreNLPWrapper.getTimeBudget();
+		if(null != timeBudget){
+			timeBudget.startDocument(getDocId(jcas));
+		}
+		
 		try {
 			
 			stanfordCoreNLPWrapper.process(jcas);
 			
 			//stanfordPOSTaggerWrapper.process(jcas);
 			
+			//the pair is fixed per thread, thus the wrapper resolves the pos of the jcas it has tagged
+			heidelTime.setPartOfSpeechResolver(stanfordCoreNLPWrapper.isLazyPartOfSpeech() ? stanfordCoreNLPWrapper : null);
+			heidelTime.setTimeBudget(timeBudget);
 			heidelTime.process(jcas);
 			
-		} catch (Exception e) {
-			e.printStackTrace();
-			System.err.println("Process ereor!");
-		}		
+		} finally {
+			if(null != timeBudget){
+				timeBudget.finishDocument();
+			}
+		}
+	}
+	
+	//
+	private static String getDocId(JCas jcas){
+		SourceDocInfo docInfo = getSourceDocInfo(jcas);
+		return null==docInfo ? null : docInfo.getId();
+	}
+	
+	/**
+	 * removes the annotations of a failed tagging, i.e., only the meta-info and the document creation time are kept
+	 * **/
+	private static void removeTaggings(JCas jcas){
+		ArrayList<Annotation> taggingList = new ArrayList<Annotation>();
+		
+		FSIterator it = jcas.getAnnotationIndex().iterator();
+		while(it.hasNext()){
+			Annotation annotation = (Annotation)it.next();
+			if(!(annotation instanceof SourceDocInfo || annotation instanceof Dct
+					|| CAS.TYPE_NAME_DOCUMENT_ANNOTATION.equals(annotation.getType().getName()))){
+				taggingList.add(annotation);
+			}
+		}
+		
+		for(Annotation annotation: taggingList){
+			annotation.removeFromIndexes();
+		}
 	}
 	
 	/**
@@ -217,6 +722,62 @@ public class TemSogouTagger {
 	}
 	
 	
+	/**
+	 * a document passed between the stages of runConcurrently()
+	 * **/
+	private static class TaggingJob {
+		//the position in the reading order
+		final long seq;
+		final JCas jcas;
+		final SourceDocInfo docInfo;
+		final DocPosition position;
+		//whether the tagged text of the canonical document will be copied, i.e., no tagging
+		boolean copy;
+		//whether the document could not be tagged within the time budget
+		boolean quarantined;
+		
+		TaggingJob(long seq, JCas jcas, SourceDocInfo docInfo, DocPosition position){
+			this.seq = seq;
+			this.jcas = jcas;
+			this.docInfo = docInfo;
+			this.position = position;
+		}
+	}
+	
+	/**
+	 * the output of a canonical document, kept for its near-duplicate documents
+	 * **/
+	private static class CanonicalOutput {
+		//null if the document is quarantined
+		final String taggedText;
+		//whether the document could not be tagged within the time budget, i.e., its near-duplicates are quarantined as well
+		final boolean quarantined;
+		
+		CanonicalOutput(String taggedText, boolean quarantined){
+			this.taggedText = taggedText;
+			this.quarantined = quarantined;
+		}
+	}
+	
+	/**
+	 * docno -> value, evicting the least-recently-used entry
+	 * **/
+	private static class LruCache<V> extends LinkedHashMap<String, V> {
+		private static final long serialVersionUID = 1L;
+		
+		private int capacity;
+		
+		LruCache(int capacity){
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+			return size() > capacity;
+		}
+	}
+	
 	//
 	public static void main(String []args){
 		//1
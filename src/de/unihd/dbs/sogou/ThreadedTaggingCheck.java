@@ -0,0 +1,77 @@
+package de.unihd.dbs.sogou;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Checks that tagging with several threads writes the same output files as tagging within one thread, e.g., after the annotators
+ * or the sharing of the Stanford models are changed: the non-tagged files are tagged into outDir/threads1 and outDir/threadsN,
+ * and the xml files of both are compared byte by byte. The differing or missing files are printed.
+ *
+ * Usage: ThreadedTaggingCheck NoTagFileDir outDir N
+ * A few non-tagged files are enough, e.g., a copy of collectionTest/NoTagVersion; outDir is expected to be empty.
+ *
+ */
+public class ThreadedTaggingCheck {
+
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println("Usage: ThreadedTaggingCheck NoTagFileDir outDir N");
+			return;
+		}
+
+		int threadNum = Integer.parseInt(args[2]);
+		File singleDir = new File(args[1], "threads1");
+		File multiDir = new File(args[1], "threads" + threadNum);
+
+		try {
+			tag(args[0], singleDir, 1);
+			tag(args[0], multiDir, threadNum);
+
+			TreeSet<String> names = new TreeSet<String>();
+			names.addAll(listXmlFiles(singleDir));
+			names.addAll(listXmlFiles(multiDir));
+
+			int mismatches = 0;
+			for (String name : names) {
+				File singleFile = new File(singleDir, name);
+				File multiFile = new File(multiDir, name);
+				if (!singleFile.exists() || !multiFile.exists()) {
+					mismatches++;
+					System.out.println("MISSING in " + (singleFile.exists() ? multiDir : singleDir) + ": " + name);
+				} else if (!Arrays.equals(Files.readAllBytes(singleFile.toPath()), Files.readAllBytes(multiFile.toPath()))) {
+					mismatches++;
+					System.out.println("MISMATCH of " + name);
+				}
+			}
+
+			System.out.println(names.size() + " files compared, " + mismatches + " mismatches");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static void tag(String inDir, File outDir, int threadNum) {
+		outDir.mkdirs();
+
+		TaggingOptions options = new TaggingOptions();
+		options.threadNum = threadNum;
+		new TemSogouTagger(inDir, outDir.getPath(), options).run();
+	}
+
+	private static TreeSet<String> listXmlFiles(File dir) {
+		TreeSet<String> names = new TreeSet<String>();
+		File[] files = dir.listFiles();
+		if (null != files) {
+			for (File file : files) {
+				if (file.getName().endsWith(".xml")) {
+					names.add(file.getName());
+				}
+			}
+		}
+		return names;
+	}
+}
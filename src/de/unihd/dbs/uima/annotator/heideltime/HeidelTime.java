@@ -15,12 +15,13 @@
 package de.unihd.dbs.uima.annotator.heideltime;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 
@@ -29,17 +30,24 @@ import org.apache.uima.analysis_component.JCasAnnotator_ImplBase;
 import org.apache.uima.cas.FSIterator;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
+import org.archive.util.metrics.PipelineMetrics;
+import org.archive.util.metrics.Stage;
+import org.archive.util.time.TimeBudget;
 
 import de.unihd.dbs.uima.annotator.heideltime.ProcessorManager.Priority;
+import de.unihd.dbs.uima.annotator.heideltime.resources.CompiledRule;
 import de.unihd.dbs.uima.annotator.heideltime.resources.Language;
 import de.unihd.dbs.uima.annotator.heideltime.resources.NormalizationManager;
+import de.unihd.dbs.uima.annotator.heideltime.resources.NormalizationTemplate;
 import de.unihd.dbs.uima.annotator.heideltime.resources.RePatternManager;
 import de.unihd.dbs.uima.annotator.heideltime.resources.RegexHashMap;
 import de.unihd.dbs.uima.annotator.heideltime.resources.RuleManager;
+import de.unihd.dbs.uima.annotator.heideltime.utilities.CharacterMask;
 import de.unihd.dbs.uima.annotator.heideltime.utilities.DateCalculator;
 import de.unihd.dbs.uima.annotator.heideltime.utilities.ContextAnalyzer;
 import de.unihd.dbs.uima.annotator.heideltime.utilities.LocaleException;
 import de.unihd.dbs.uima.annotator.heideltime.utilities.Logger;
+import de.unihd.dbs.uima.annotator.heideltime.utilities.RuleAutomaton;
 import de.unihd.dbs.uima.annotator.heideltime.utilities.Toolbox;
 import de.unihd.dbs.uima.types.heideltime.Dct;
 import de.unihd.dbs.uima.types.heideltime.Sentence;
@@ -62,15 +70,9 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 	// PROCESSOR MANAGER
 	private ProcessorManager procMan = new ProcessorManager();
 
-	// COUNTER (how many timexes added to CAS? (finally)
-	public int timex_counter        = 0;
-	public int timex_counter_global = 0;
-	
-	// FLAG (for historic expressions referring to BC)
-	public Boolean flagHistoricDates = false;
-	
-	// COUNTER FOR TIMEX IDS
-	private int timexID = 0;
+	// COUNTER (how many timexes added to CAS of all documents? (finally)
+	// the per-document state is kept in a ProcessingState, since process() may be called by several threads
+	private AtomicInteger timex_counter_global = new AtomicInteger();
 	
 	// INPUT PARAMETER HANDLING WITH UIMA
 	private String PARAM_LANGUAGE         = "Language";
@@ -96,6 +98,19 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 	private Boolean group_gran     = true;
 	// FOR DEBUGGING PURPOSES (IF FALSE)
 	private Boolean deleteOverlapped = true;
+	
+	// LATENCIES PER DOCUMENT (null if not measured)
+	private Stage extractionStage = null;
+	private Stage disambiguationStage = null;
+	
+	// supplies the part of speech on demand, if the tagger leaves it empty; null if the tokens are tagged already
+	private PartOfSpeechResolver posResolver = null;
+	
+	// checked before each sentence, i.e., the regex matching of a document is bounded as well; null for no limit
+	private TimeBudget timeBudget = null;
+	
+	// whether the rules of a type are matched in one scan by its RuleAutomaton, rather than one java.util.regex scan per rule
+	private boolean useRuleAutomaton = false;
 
 
 	/**
@@ -173,22 +188,64 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 		if (find_durations) Logger.printDetail("Getting Durations...");	
 		if (find_sets) Logger.printDetail("Getting Sets...");
 	}
+	
+	/**
+	 * @param metrics where process() records the extraction and disambiguation latencies of each document; null for none
+	 */
+	public void setMetrics(PipelineMetrics metrics) {
+		if (metrics == null) {
+			extractionStage = disambiguationStage = null;
+		} else {
+			extractionStage = metrics.getStage("heideltime-extraction");
+			disambiguationStage = metrics.getStage("heideltime-disambiguation");
+		}
+	}
+
+	/**
+	 * @param posResolver asked for the part of speech of a sentence before a POS_CONSTRAINT or the tense of an ambiguous expression is checked,
+	 * e.g., the Stanford wrapper in the lazy pos mode; null if the tokens have their part of speech already
+	 */
+	public void setPartOfSpeechResolver(PartOfSpeechResolver posResolver) {
+		this.posResolver = posResolver;
+	}
+	
+	/**
+	 * @param useRuleAutomaton whether the rules of a type are matched in one scan of the sentence by the RuleAutomaton of the RuleManager,
+	 * with the same matches as java.util.regex, which remains the default and takes the rules that the automaton does not compile
+	 */
+	public void setRuleAutomaton(boolean useRuleAutomaton) {
+		this.useRuleAutomaton = useRuleAutomaton;
+	}
+	
+	/**
+	 * @param timeBudget checked before each sentence, which throws TimeBudgetExceededException once it is used up; null for no limit
+	 */
+	public void setTimeBudget(TimeBudget timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+	
+	private void resolvePartOfSpeech(JCas jcas, Sentence s) {
+		if (posResolver != null) {
+			posResolver.resolve(jcas, s);
+		}
+	}
 
 	
 	/**
 	 * @see JCasAnnotator_ImplBase#process(JCas)
 	 */
 	public void process(JCas jcas) {
+		long startNanos = System.nanoTime();
+		
 		// run preprocessing processors
 		procMan.executeProcessors(jcas, Priority.PREPROCESSING);
 		
 		RuleManager rulem = RuleManager.getInstance(language);
 		
-		timexID = 1; // reset counter once per document processing
+		ProcessingState state = new ProcessingState(); // once per document processing
 
-		timex_counter = 0;
-
-		flagHistoricDates = false;
+		// FLAG (for historic expressions referring to BC)
+		boolean flagHistoricDates = false;
 		
 		////////////////////////////////////////////
 		// CHECK SENTENCE BY SENTENCE FOR TIMEXES //
@@ -208,13 +265,18 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 		while (sentIter.hasNext()) {
 			Sentence s = (Sentence) sentIter.next();
 			
+			if (timeBudget != null) {
+				timeBudget.check();
+				timeBudget.startSentence();
+			}
+			
 			Boolean debugIteration = false;
 			Boolean oldDebugState = Logger.getPrintDetails();
 			do {
 				try {
 					if (find_dates) {
 						try {
-							findTimexes("DATE", rulem.getHmDatePattern(), rulem.getHmDateOffset(), rulem.getHmDateNormalization(), rulem.getHmDateQuant(), s, jcas);
+							findTimexes("DATE", rulem.getDateRules(), useRuleAutomaton ? rulem.getDateAutomaton() : null, s, jcas, state);
 						} catch (Exception ee) {
 							ee.printStackTrace();
 							System.err.println(s);
@@ -223,7 +285,7 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 					}
 					if (find_times) {
 						try {
-							findTimexes("TIME", rulem.getHmTimePattern(), rulem.getHmTimeOffset(), rulem.getHmTimeNormalization(), rulem.getHmTimeQuant(), s, jcas);
+							findTimexes("TIME", rulem.getTimeRules(), useRuleAutomaton ? rulem.getTimeAutomaton() : null, s, jcas, state);
 						} catch (Exception ee) {
 							ee.printStackTrace();
 							System.err.println("Error with function of find_times-findTimexes");
@@ -247,14 +309,14 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 					
 					if (find_sets) {
 						try {
-							findTimexes("SET", rulem.getHmSetPattern(), rulem.getHmSetOffset(), rulem.getHmSetNormalization(), rulem.getHmSetQuant(), s, jcas);
+							findTimexes("SET", rulem.getSetRules(), useRuleAutomaton ? rulem.getSetAutomaton() : null, s, jcas, state);
 						} catch (Exception ee) {
 							
 						}
 					}
 					if (find_durations) {
 						try {
-							findTimexes("DURATION", rulem.getHmDurationPattern(), rulem.getHmDurationOffset(), rulem.getHmDurationNormalization(), rulem.getHmDurationQuant(), s, jcas);
+							findTimexes("DURATION", rulem.getDurationRules(), useRuleAutomaton ? rulem.getDurationAutomaton() : null, s, jcas, state);
 						} catch (Exception ee) {
 							System.err.println("Error with function of find_durations-findTimexes");
 						}
@@ -281,6 +343,8 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 				}
 			} while(debugIteration);
 		}
+		
+		long extractedNanos = System.nanoTime();
 
 		/*
 		 * kick out some overlapping expressions
@@ -319,8 +383,29 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 		// run postprocessing processors
 		procMan.executeProcessors(jcas, Priority.POSTPROCESSING);
 
-		timex_counter_global = timex_counter_global + timex_counter;
-		Logger.printDetail(component, "Number of Timexes added to CAS: "+timex_counter + "(global: "+timex_counter_global+")");
+		if (extractionStage != null) {
+			extractionStage.record(extractedNanos - startNanos);
+			disambiguationStage.record(System.nanoTime() - extractedNanos);
+		}
+		
+		int timex_counter = jcas.getAnnotationIndex(Timex3.type).size();
+		Logger.printDetail(component, "Number of Timexes added to CAS: "+timex_counter + "(global: "+timex_counter_global.addAndGet(timex_counter)+")");
+	}
+	
+	/**
+	 * The mutable state of processing one document, i.e., created by process() rather than kept in fields,
+	 * so that the same annotator can be used by several CPE processing units at once
+	 */
+	public static class ProcessingState {
+		// COUNTER FOR TIMEX IDS
+		private int timexID = 1;
+		
+		/**
+		 * @return the id of the next timex of the document, e.g., t1
+		 */
+		public String nextTimexId() {
+			return "t" + timexID++;
+		}
 	}
 
 	
@@ -381,7 +466,6 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 			annotation.setTimexMod(timexMod);
 		}
 		annotation.addToIndexes();
-		this.timex_counter++;
 		
 		Logger.printDetail(annotation.getTimexId()+"EXTRACTION PHASE:   "+" found by:"+annotation.getFoundByRule()+" text:"+annotation.getCoveredText());
 		Logger.printDetail(annotation.getTimexId()+"NORMALIZATION PHASE:"+" found by:"+annotation.getFoundByRule()+" text:"+annotation.getCoveredText()+" value:"+annotation.getTimexValue());
@@ -486,7 +570,6 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 		// remove invalids, finally
 		for (Timex3 timex3 : hsTimexToRemove) {
 			timex3.removeFromIndexes();
-			this.timex_counter--;
 			Logger.printDetail(timex3.getTimexId()+" REMOVING PHASE: "+"found by:"+timex3.getFoundByRule()+" text:"+timex3.getCoveredText()+" value:"+timex3.getTimexValue());
 		}
 	}
@@ -667,6 +750,9 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 			}
 		}
 		// get the last tense (depending on the part of speech tags used in front or behind the expression)
+		if (posResolver != null) {
+			resolvePartOfSpeech(jcas, ContextAnalyzer.getSentence(t_i, jcas));
+		}
 		String last_used_tense = ContextAnalyzer.getLastTense(t_i, jcas, language);
 
 		//////////////////////////
@@ -1952,7 +2038,6 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 			Logger.printDetail("REMOVE DUPLICATE: " + t.getCoveredText()+"(id:"+t.getTimexId()+" value:"+t.getTimexValue()+" found by:"+t.getFoundByRule()+")");
 			
 			t.removeFromIndexes();
-			timex_counter--;
 		}
 	}
 	
@@ -2136,55 +2221,54 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 	/**
 	 * Apply the extraction rules, normalization rules
 	 * @param timexType
-	 * @param hmPattern
-	 * @param hmOffset
-	 * @param hmNormalization
-	 * @param hmQuant
+	 * @param rules the rules of the type, sorted by name
+	 * @param automaton the patterns of the rules in one RuleAutomaton; null to match each rule by java.util.regex
 	 * @param s
 	 * @param jcas
+	 * @param state the state of processing the document, e.g., for the timex ids
 	 */
 	public void findTimexes(String timexType, 
-							HashMap<Pattern, String> hmPattern,
-							HashMap<String, String> hmOffset,
-							HashMap<String, String> hmNormalization,
-							HashMap<String, String> hmQuant,
+							CompiledRule[] rules,
+							RuleAutomaton automaton,
 							Sentence s,
-							JCas jcas) {
-		RuleManager rm = RuleManager.getInstance(language);
-		HashMap<String, String> hmDatePosConstraint = rm.getHmDatePosConstraint();
-		HashMap<String, String> hmDurationPosConstraint = rm.getHmDurationPosConstraint();
-		HashMap<String, String> hmTimePosConstraint = rm.getHmTimePosConstraint();
-		HashMap<String, String> hmSetPosConstraint = rm.getHmSetPosConstraint();
-		
-		// Iterator over the rules by sorted by the name of the rules
+							JCas jcas,
+							ProcessingState state) {
+		// Iterate over the rules sorted by the name of the rules
 		// this is important since later, the timexId will be used to 
 		// decide which of two expressions shall be removed if both
 		// have the same offset
-		for (Iterator<Pattern> i = Toolbox.sortByValue(hmPattern).iterator(); i.hasNext(); ) {
-            Pattern p = (Pattern) i.next();
-
-			for (MatchResult r : Toolbox.findMatches(p, s.getCoveredText())) {
+		String text = s.getCoveredText();
+		long[] textMask = CharacterMask.of(text);
+		boolean[] candidates = new boolean[rules.length];
+		for (int i = 0; i < rules.length; i++) {
+			// skip the rules whose required characters are not in the sentence, e.g., 年 or a digit
+			candidates[i] = CharacterMask.mayMatch(rules[i].getRequiredMasks(), textMask);
+		}
+		
+		// the matches of the candidate rules in one scan, null for a rule left to java.util.regex
+		MatchResult[][] automatonMatches = automaton == null ? null : automaton.findAll(text, candidates);
+		
+		for (int i = 0; i < rules.length; i++) {
+			if (!candidates[i]) {
+				continue;
+			}
+			CompiledRule rule = rules[i];
+			
+			Iterable<MatchResult> matches;
+			if (automatonMatches != null && automatonMatches[i] != null) {
+				matches = Arrays.asList(automatonMatches[i]);
+			} else {
+				matches = Toolbox.findMatches(rule.getPattern(), text);
+			}
+			
+			for (MatchResult r : matches) {
 				boolean infrontBehindOK = ContextAnalyzer.checkTokenBoundaries(r, s, jcas) // improved token boundary checking
 									&& ContextAnalyzer.checkInfrontBehind(r, s);
 
 				boolean posConstraintOK = true;
 				// CHECK POS CONSTRAINTS
-				if (timexType.equals("DATE")) {
-					if (hmDatePosConstraint.containsKey(hmPattern.get(p))) {
-						posConstraintOK = checkPosConstraint(s , hmDatePosConstraint.get(hmPattern.get(p)), r, jcas);
-					}
-				} else if (timexType.equals("DURATION")) {
-					if (hmDurationPosConstraint.containsKey(hmPattern.get(p))) {
-						posConstraintOK = checkPosConstraint(s , hmDurationPosConstraint.get(hmPattern.get(p)), r, jcas);
-					}					
-				} else if (timexType.equals("TIME")) {
-					if (hmTimePosConstraint.containsKey(hmPattern.get(p))) {
-						posConstraintOK = checkPosConstraint(s , hmTimePosConstraint.get(hmPattern.get(p)), r, jcas);
-					}
-				} else if (timexType.equals("SET")) {
-					if (hmSetPosConstraint.containsKey(hmPattern.get(p))) {
-						posConstraintOK = checkPosConstraint(s , hmSetPosConstraint.get(hmPattern.get(p)), r, jcas);
-					}
+				if (rule.getPosConstraint() != null) {
+					posConstraintOK = checkPosConstraint(s , rule.getPosConstraint(), r, jcas);
 				}
 				
 				if ((infrontBehindOK == true) && (posConstraintOK == true)) {
@@ -2196,36 +2280,19 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 					// Normalization from Files:
 					
 					// Any offset parameter?
-					if (hmOffset.containsKey(hmPattern.get(p))) {
-						String offset    = hmOffset.get(hmPattern.get(p));
-				
-						// pattern for offset information
-						Pattern paOffset = Pattern.compile("group\\(([0-9]+)\\)-group\\(([0-9]+)\\)");
-						for (MatchResult mr : Toolbox.findMatches(paOffset,offset)) {
-							int startOffset = Integer.parseInt(mr.group(1));
-							int endOffset   = Integer.parseInt(mr.group(2));
-							timexStart = r.start(startOffset);
-							timexEnd   = r.end(endOffset); 
-						}
+					if (rule.hasOffset()) {
+						timexStart = r.start(rule.getOffsetStartGroup());
+						timexEnd   = r.end(rule.getOffsetEndGroup()); 
 					}
 					
 					// Normalization Parameter
-					if (hmNormalization.containsKey(hmPattern.get(p))) {
-						String[] attributes = new String[5];
-						if (timexType.equals("DATE")) {
-							attributes = getAttributesForTimexFromFile(hmPattern.get(p), rm.getHmDateNormalization(), rm.getHmDateQuant(), rm.getHmDateFreq(), rm.getHmDateMod(), rm.getHmDateEmptyValue(), r, jcas);
-						} else if (timexType.equals("DURATION")) {
-							attributes = getAttributesForTimexFromFile(hmPattern.get(p), rm.getHmDurationNormalization(), rm.getHmDurationQuant(), rm.getHmDurationFreq(), rm.getHmDurationMod(), rm.getHmDurationEmptyValue(), r, jcas);
-						} else if (timexType.equals("TIME")) {
-							attributes = getAttributesForTimexFromFile(hmPattern.get(p), rm.getHmTimeNormalization(), rm.getHmTimeQuant(), rm.getHmTimeFreq(), rm.getHmTimeMod(), rm.getHmTimeEmptyValue(), r, jcas);
-						} else if (timexType.equals("SET")) {
-							attributes = getAttributesForTimexFromFile(hmPattern.get(p), rm.getHmSetNormalization(), rm.getHmSetQuant(), rm.getHmSetFreq(), rm.getHmSetMod(), rm.getHmSetEmptyValue(), r, jcas);
-						}
+					if (rule.getNormalization() != null) {
+						String[] attributes = getAttributesForTimexFromFile(rule, r, jcas);
 						addTimexAnnotation(timexType, timexStart + s.getBegin(), timexEnd + s.getBegin(), s, 
-								attributes[0], attributes[1], attributes[2], attributes[3], attributes[4], "t" + timexID++, hmPattern.get(p), jcas);
+								attributes[0], attributes[1], attributes[2], attributes[3], attributes[4], state.nextTimexId(), rule.getName(), jcas);
 					}
 					else {
-						Logger.printError("SOMETHING REALLY WRONG HERE: "+hmPattern.get(p));
+						Logger.printError("SOMETHING REALLY WRONG HERE: "+rule.getName());
 					}
 				}
 			}
@@ -2243,6 +2310,7 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 	 */
 	public boolean checkPosConstraint(Sentence s, String posConstraint, MatchResult m, JCas jcas) {
 		Pattern paConstraint = Pattern.compile("group\\(([0-9]+)\\):(.*?):");
+		resolvePartOfSpeech(jcas, s);
 		for (MatchResult mr : Toolbox.findMatches(paConstraint,posConstraint)) {
 			int groupNumber = Integer.parseInt(mr.group(1));
 			int tokenBegin = s.getBegin() + m.start(groupNumber);
@@ -2259,6 +2327,21 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 	}
 	
 	
+	/**
+	 * Evaluates the template parsed at load time, or rewrites the template string if it could not be parsed.
+	 * @param template
+	 * @param tonormalize
+	 * @param m
+	 * @return
+	 */
+	private String applyRuleFunctions(NormalizationTemplate template, String tonormalize, MatchResult m) {
+		if (template == null) {
+			return applyRuleFunctions(tonormalize, m);
+		}
+		return template.apply(m, NormalizationManager.getInstance(language));
+	}
+	
+	
 	public String applyRuleFunctions(String tonormalize, MatchResult m) {
 		NormalizationManager norm = NormalizationManager.getInstance(language);
 		
@@ -2372,12 +2455,7 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 	}
 	
 	
-	public String[] getAttributesForTimexFromFile(String rule,
-													HashMap<String, String> hmNormalization,
-													HashMap<String, String> hmQuant,
-													HashMap<String, String> hmFreq,
-													HashMap<String, String> hmMod,
-													HashMap<String, String> hmEmptyValue,
+	public String[] getAttributesForTimexFromFile(CompiledRule rule,
 													MatchResult m, 
 													JCas jcas) {
 		String[] attributes = new String[5];
@@ -2388,31 +2466,31 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 		String emptyValue = "";
 		
 		// Normalize Value
-		String value_normalization_pattern = hmNormalization.get(rule);
-		value = applyRuleFunctions(value_normalization_pattern, m);
+		String value_normalization_pattern = rule.getNormalization();
+		value = applyRuleFunctions(rule.getNormalizationTemplate(), value_normalization_pattern, m);
 		
 		// get quant
-		if (hmQuant.containsKey(rule)) {
-			String quant_normalization_pattern = hmQuant.get(rule);
-			quant = applyRuleFunctions(quant_normalization_pattern, m);
+		if (rule.getQuant() != null) {
+			String quant_normalization_pattern = rule.getQuant();
+			quant = applyRuleFunctions(rule.getQuantTemplate(), quant_normalization_pattern, m);
 		}
 
 		// get freq
-		if (hmFreq.containsKey(rule)) {
-			String freq_normalization_pattern = hmFreq.get(rule);
-			freq = applyRuleFunctions(freq_normalization_pattern, m);
+		if (rule.getFreq() != null) {
+			String freq_normalization_pattern = rule.getFreq();
+			freq = applyRuleFunctions(rule.getFreqTemplate(), freq_normalization_pattern, m);
 		}
 		
 		// get mod
-		if (hmMod.containsKey(rule)) {
-			String mod_normalization_pattern = hmMod.get(rule);
-			mod = applyRuleFunctions(mod_normalization_pattern, m);
+		if (rule.getMod() != null) {
+			String mod_normalization_pattern = rule.getMod();
+			mod = applyRuleFunctions(rule.getModTemplate(), mod_normalization_pattern, m);
 		}
 		
 		// get emptyValue
-		if (hmEmptyValue.containsKey(rule)) {
-			String emptyValue_normalization_pattern = hmEmptyValue.get(rule);
-			emptyValue = applyRuleFunctions(emptyValue_normalization_pattern, m);
+		if (rule.getEmptyValue() != null) {
+			String emptyValue_normalization_pattern = rule.getEmptyValue();
+			emptyValue = applyRuleFunctions(rule.getEmptyValueTemplate(), emptyValue_normalization_pattern, m);
 			emptyValue = correctDurationValue(emptyValue);
 		}
 		// For example "PT24H" -> "P1D"
@@ -0,0 +1,17 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import org.apache.uima.jcas.JCas;
+
+import de.unihd.dbs.uima.types.heideltime.Sentence;
+
+/**
+ * Supplies the part of speech of the tokens on demand, i.e., for a tagger that leaves Token.getPos() empty
+ * until HeidelTime needs it for a POS_CONSTRAINT or for the tense of an ambiguous expression.
+ */
+public interface PartOfSpeechResolver {
+
+	/**
+	 * sets the part of speech of the tokens of the sentence, unless they have one already
+	 */
+	public void resolve(JCas jcas, Sentence sentence);
+}
@@ -0,0 +1,150 @@
+package de.unihd.dbs.uima.annotator.heideltime.resources;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.unihd.dbs.uima.annotator.heideltime.utilities.CharacterMask;
+
+/**
+ * One extraction rule with all its parts, as read by the RuleManager, i.e., the pattern,
+ * the offset groups and the normalization templates of the value, quant, freq, mod and empty value,
+ * each also parsed into a NormalizationTemplate.
+ * It is never modified once created, thus it can be shared by all the threads.
+ *
+ */
+public class CompiledRule {
+	// pattern of the offset part, e.g., group(2)-group(3)
+	private static final Pattern paOffset = Pattern.compile("group\\(([0-9]+)\\)-group\\(([0-9]+)\\)");
+
+	private final String name;
+	private final Pattern pattern;
+
+	// the characters that a match needs, see CharacterMask
+	private final long[][] requiredMasks;
+
+	// the groups of the match that give the offsets of the timex, -1 for the whole match
+	private final int offsetStartGroup;
+	private final int offsetEndGroup;
+
+	// normalization templates, null if the rule has no such part
+	private final String normalization;
+	private final String quant;
+	private final String freq;
+	private final String mod;
+	private final String posConstraint;
+	private final String emptyValue;
+
+	// the parsed normalization templates, null if the rule has no such part or it could not be parsed
+	private final NormalizationTemplate normalizationTemplate;
+	private final NormalizationTemplate quantTemplate;
+	private final NormalizationTemplate freqTemplate;
+	private final NormalizationTemplate modTemplate;
+	private final NormalizationTemplate emptyValueTemplate;
+
+	/**
+	 * @param offset
+	 *            the offset part of the rule, null if the rule has none
+	 */
+	CompiledRule(String name, Pattern pattern, String offset, String normalization, String quant,
+			String freq, String mod, String posConstraint, String emptyValue) {
+		this.name = name;
+		this.pattern = pattern;
+		this.requiredMasks = pattern.flags() == 0 ? CharacterMask.requiredBy(pattern.pattern()) : new long[0][];
+		this.normalization = normalization;
+		this.quant = quant;
+		this.freq = freq;
+		this.mod = mod;
+		this.posConstraint = posConstraint;
+		this.emptyValue = emptyValue;
+
+		this.normalizationTemplate = NormalizationTemplate.compile(normalization);
+		this.quantTemplate = NormalizationTemplate.compile(quant);
+		this.freqTemplate = NormalizationTemplate.compile(freq);
+		this.modTemplate = NormalizationTemplate.compile(mod);
+		this.emptyValueTemplate = NormalizationTemplate.compile(emptyValue);
+
+		// the last group(x)-group(y) of the offset part counts, as before
+		int startGroup = -1;
+		int endGroup = -1;
+		if (offset != null) {
+			Matcher mOffset = paOffset.matcher(offset);
+			while (mOffset.find()) {
+				startGroup = Integer.parseInt(mOffset.group(1));
+				endGroup = Integer.parseInt(mOffset.group(2));
+			}
+		}
+		this.offsetStartGroup = startGroup;
+		this.offsetEndGroup = endGroup;
+	}
+
+	public final String getName() {
+		return name;
+	}
+
+	public final Pattern getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return the masks of which every match contains at least one character each, not to be modified
+	 */
+	public final long[][] getRequiredMasks() {
+		return requiredMasks;
+	}
+
+	public final boolean hasOffset() {
+		return offsetStartGroup >= 0;
+	}
+
+	public final int getOffsetStartGroup() {
+		return offsetStartGroup;
+	}
+
+	public final int getOffsetEndGroup() {
+		return offsetEndGroup;
+	}
+
+	public final String getNormalization() {
+		return normalization;
+	}
+
+	public final String getQuant() {
+		return quant;
+	}
+
+	public final String getFreq() {
+		return freq;
+	}
+
+	public final String getMod() {
+		return mod;
+	}
+
+	public final String getPosConstraint() {
+		return posConstraint;
+	}
+
+	public final String getEmptyValue() {
+		return emptyValue;
+	}
+
+	public final NormalizationTemplate getNormalizationTemplate() {
+		return normalizationTemplate;
+	}
+
+	public final NormalizationTemplate getQuantTemplate() {
+		return quantTemplate;
+	}
+
+	public final NormalizationTemplate getFreqTemplate() {
+		return freqTemplate;
+	}
+
+	public final NormalizationTemplate getModTemplate() {
+		return modTemplate;
+	}
+
+	public final NormalizationTemplate getEmptyValueTemplate() {
+		return emptyValueTemplate;
+	}
+}
@@ -16,6 +16,9 @@ import de.unihd.dbs.uima.annotator.heideltime.utilities.Toolbox;
  * 
  * Abstract class for all Resource Managers to inherit from. Contains basic
  * functionality such as file system access and some private members.
+ * 
+ * The resources are read by the constructors only, i.e., the singleton of a
+ * language is read-only afterwards and can be shared by several threads.
  *
  */
 public abstract class GenericResourceManager {
@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 
@@ -17,7 +18,7 @@ import de.unihd.dbs.uima.annotator.heideltime.utilities.*;
  *
  */
 public class NormalizationManager extends GenericResourceManager {
-	protected static HashMap<Language, NormalizationManager> instances = new HashMap<Language, NormalizationManager>();
+	protected static ConcurrentHashMap<Language, NormalizationManager> instances = new ConcurrentHashMap<Language, NormalizationManager>();
 	// PATTERNS TO READ RESOURCES "RULES" AND "NORMALIZATION"
 	private Pattern paReadNormalizations = Pattern.compile("\"(.*?)\",\"(.*?)\"");
 
@@ -69,12 +70,19 @@ public class NormalizationManager extends GenericResourceManager {
 	 * @return singleton instance of NormalizationManager
 	 */
 	public static NormalizationManager getInstance(Language language) {
-		if(!instances.containsKey(language)) {
-			NormalizationManager nm = new NormalizationManager(language.getResourceFolder());
-			instances.put(language, nm);
+		NormalizationManager nm = instances.get(language);
+		if(nm == null) {
+			// read the resources once, even if several threads ask for them at the same time
+			synchronized(instances) {
+				nm = instances.get(language);
+				if(nm == null) {
+					nm = new NormalizationManager(language.getResourceFolder());
+					instances.put(language, nm);
+				}
+			}
 		}
 		
-		return instances.get(language);
+		return nm;
 	}
 	
 	/**
@@ -82,7 +90,7 @@ public class NormalizationManager extends GenericResourceManager {
 	 * fill the HashMaps used for normalization tasks.
 	 * @param hmResourcesNormalization normalization patterns to be interpreted
 	 */
-	public void readNormalizationResources(HashMap<String, String> hmResourcesNormalization) {
+	private void readNormalizationResources(HashMap<String, String> hmResourcesNormalization) {
 		try {
 			for (String resource : hmResourcesNormalization.keySet()) {
 				Logger.printDetail(component, "Adding normalization resource: "+resource);
@@ -0,0 +1,424 @@
+package de.unihd.dbs.uima.annotator.heideltime.resources;
+
+import java.util.ArrayList;
+import java.util.regex.MatchResult;
+
+import de.unihd.dbs.uima.annotator.heideltime.utilities.Logger;
+
+/**
+ * A normalization part of a rule (NORM_VALUE, NORM_QUANT, NORM_FREQ, NORM_MOD or EMPTY_VALUE), parsed once
+ * into a tree of group references, normalization functions (e.g., %normDay(group(2))) and the built-in
+ * functions %SUBSTRING%, %LOWERCASE%, %UPPERCASE%, %SUM% and %CHINESENUMBERS%.
+ *
+ * Applying it to a match gives the same value as HeidelTime.applyRuleFunctions(), which rewrites the
+ * template string with regular expressions until no function is left: the inner functions are evaluated
+ * first, and an argument ends at the first ")" (or "," where the function takes several). As there, a missing
+ * normalization entry or a referenced group that did not take part in the match raises a NullPointerException,
+ * except for a group that is the argument of a normalization function, which yields an empty string.
+ *
+ */
+public class NormalizationTemplate {
+	private final Node root;
+
+	private NormalizationTemplate(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * @param template
+	 *            the normalization part of a rule
+	 * @return the parsed template, null if it does not follow the syntax above,
+	 *            e.g., a stray "%", thus it is left to HeidelTime.applyRuleFunctions()
+	 */
+	public static NormalizationTemplate compile(String template) {
+		if (template == null) {
+			return null;
+		}
+
+		Parser parser = new Parser(template);
+		Node root = parser.parseSequence(false, false);
+		if (root == null || parser.pos != template.length()) {
+			return null;
+		}
+		return new NormalizationTemplate(root);
+	}
+
+	/**
+	 * @return the normalized value of the template for the match
+	 */
+	public String apply(MatchResult m, NormalizationManager norm) {
+		return root.evaluate(m, norm);
+	}
+
+	// ///////////////////////////////////////////////
+	// NODES OF THE TEMPLATE                        //
+	// ///////////////////////////////////////////////
+	private static abstract class Node {
+		abstract void appendTo(StringBuilder sb, MatchResult m, NormalizationManager norm);
+
+		String evaluate(MatchResult m, NormalizationManager norm) {
+			StringBuilder sb = new StringBuilder();
+			appendTo(sb, m, norm);
+			return sb.toString();
+		}
+	}
+
+	private static class Literal extends Node {
+		private final String text;
+
+		Literal(String text) {
+			this.text = text;
+		}
+
+		void appendTo(StringBuilder sb, MatchResult m, NormalizationManager norm) {
+			sb.append(text);
+		}
+
+		String evaluate(MatchResult m, NormalizationManager norm) {
+			return text;
+		}
+	}
+
+	private static class Sequence extends Node {
+		private final Node[] parts;
+
+		Sequence(Node[] parts) {
+			this.parts = parts;
+		}
+
+		void appendTo(StringBuilder sb, MatchResult m, NormalizationManager norm) {
+			for (Node part : parts) {
+				part.appendTo(sb, m, norm);
+			}
+		}
+	}
+
+	// group(n)
+	private static class GroupRef extends Node {
+		private final int group;
+
+		GroupRef(int group) {
+			this.group = group;
+		}
+
+		void appendTo(StringBuilder sb, MatchResult m, NormalizationManager norm) {
+			sb.append(evaluate(m, norm));
+		}
+
+		String evaluate(MatchResult m, NormalizationManager norm) {
+			String text = m.group(group);
+			if (text == null) {
+				throw new NullPointerException("group(" + group + ") did not take part in the match");
+			}
+			return text;
+		}
+	}
+
+	// %normXxx(...)
+	private static class NormFunction extends Node {
+		private final String name;
+		private final Node argument;
+
+		NormFunction(String name, Node argument) {
+			this.name = name;
+			this.argument = argument;
+		}
+
+		void appendTo(StringBuilder sb, MatchResult m, NormalizationManager norm) {
+			String key;
+			if (argument instanceof GroupRef) {
+				// the matched text, with the whitespaces collapsed, or nothing for an absent group
+				key = m.group(((GroupRef) argument).group);
+				if (key == null) {
+					return;
+				}
+				key = collapseWhitespaces(key);
+			} else {
+				key = argument.evaluate(m, norm);
+			}
+
+			String normalized = norm.getFromHmAllNormalization(name).get(key);
+			if (normalized == null) {
+				throw new NullPointerException("no normalization of \"" + key + "\" in " + name);
+			}
+			sb.append(normalized);
+		}
+	}
+
+	// %SUBSTRING%(...,begin,end)
+	private static class Substring extends Node {
+		private final Node argument;
+		private final int begin;
+		private final int end;
+
+		Substring(Node argument, int begin, int end) {
+			this.argument = argument;
+			this.begin = begin;
+			this.end = end;
+		}
+
+		void appendTo(StringBuilder sb, MatchResult m, NormalizationManager norm) {
+			// out of bounds as with String.substring()
+			sb.append(argument.evaluate(m, norm), begin, end);
+		}
+	}
+
+	// %LOWERCASE%(...) and %UPPERCASE%(...)
+	private static class ChangeCase extends Node {
+		private final Node argument;
+		private final boolean upper;
+
+		ChangeCase(Node argument, boolean upper) {
+			this.argument = argument;
+			this.upper = upper;
+		}
+
+		void appendTo(StringBuilder sb, MatchResult m, NormalizationManager norm) {
+			String text = argument.evaluate(m, norm);
+			sb.append(upper ? text.toUpperCase() : text.toLowerCase());
+		}
+	}
+
+	// %SUM%(...,...)
+	private static class Sum extends Node {
+		private final Node left;
+		private final Node right;
+
+		Sum(Node left, Node right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		void appendTo(StringBuilder sb, MatchResult m, NormalizationManager norm) {
+			sb.append(Integer.parseInt(left.evaluate(m, norm)) + Integer.parseInt(right.evaluate(m, norm)));
+		}
+	}
+
+	// %CHINESENUMBERS%(...)
+	private static class ChineseNumbers extends Node {
+		private static final String[] NUMERALS = {"零０0", "一１1", "二２2", "三３3", "四４4", "五５5", "六６6", "七７7", "八８8", "九９9"};
+
+		private final Node argument;
+
+		ChineseNumbers(Node argument) {
+			this.argument = argument;
+		}
+
+		void appendTo(StringBuilder sb, MatchResult m, NormalizationManager norm) {
+			String text = argument.evaluate(m, norm);
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				int digit = toDigit(c);
+				if (digit >= 0) {
+					sb.append((char) ('0' + digit));
+				} else {
+					Logger.printError(NormalizationTemplate.class, "Found an error in the resources: " + text + " contains " +
+							"a character that is not defined in the Chinese numerals map. Normalization may be mangled.");
+					sb.append(c);
+				}
+			}
+		}
+
+		private static int toDigit(char c) {
+			for (int digit = 0; digit < NUMERALS.length; digit++) {
+				if (NUMERALS[digit].indexOf(c) >= 0) {
+					return digit;
+				}
+			}
+			return -1;
+		}
+	}
+
+	// as replaceAll("[\n\\s]+", " ")
+	private static String collapseWhitespaces(String text) {
+		int i = 0;
+		while (i < text.length() && !isWhitespace(text.charAt(i))) {
+			i++;
+		}
+		if (i == text.length()) {
+			return text;
+		}
+
+		StringBuilder sb = new StringBuilder(text.length());
+		sb.append(text, 0, i);
+		boolean inWhitespaces = false;
+		for (; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (isWhitespace(c)) {
+				if (!inWhitespaces) {
+					sb.append(' ');
+				}
+				inWhitespaces = true;
+			} else {
+				sb.append(c);
+				inWhitespaces = false;
+			}
+		}
+		return sb.toString();
+	}
+
+	// the \s of java.util.regex
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	// ///////////////////////////////////////////////
+	// PARSER OF THE TEMPLATE                       //
+	// ///////////////////////////////////////////////
+	private static class Parser {
+		private final String template;
+		private int pos = 0;
+
+		Parser(String template) {
+			this.template = template;
+		}
+
+		/**
+		 * @param stopAtComma
+		 *            whether the sequence is an argument followed by a further one
+		 * @param stopAtParenthesis
+		 *            whether the sequence is the last argument of a function
+		 * @return the nodes up to the end of the argument, or of the template; null on a syntax error
+		 */
+		Node parseSequence(boolean stopAtComma, boolean stopAtParenthesis) {
+			ArrayList<Node> parts = new ArrayList<Node>();
+			StringBuilder literal = new StringBuilder();
+
+			while (pos < template.length()) {
+				char c = template.charAt(pos);
+				if ((stopAtComma && c == ',') || (stopAtParenthesis && c == ')')) {
+					break;
+				}
+
+				Node node = null;
+				if (c == '%') {
+					node = parseFunction();
+					if (node == null) {
+						return null;
+					}
+				} else if (template.startsWith("group(", pos)) {
+					node = parseGroup();
+				}
+
+				if (node == null) {
+					literal.append(c);
+					pos++;
+				} else {
+					if (literal.length() > 0) {
+						parts.add(new Literal(literal.toString()));
+						literal.setLength(0);
+					}
+					parts.add(node);
+				}
+			}
+			if (literal.length() > 0) {
+				parts.add(new Literal(literal.toString()));
+			}
+
+			if (parts.size() == 1) {
+				return parts.get(0);
+			}
+			return new Sequence(parts.toArray(new Node[parts.size()]));
+		}
+
+		// group(n), or null if it is no group reference, e.g., "group(x"
+		private Node parseGroup() {
+			int start = pos;
+			pos += "group(".length();
+			int group = parseNumber();
+			if (group < 0 || !consume(")")) {
+				pos = start;
+				return null;
+			}
+			return new GroupRef(group);
+		}
+
+		private Node parseFunction() {
+			if (consume("%SUBSTRING%(")) {
+				Node argument = parseArgument(true, false);
+				if (argument == null || !consume(",")) {
+					return null;
+				}
+				int begin = parseNumber();
+				if (begin < 0 || !consume(",")) {
+					return null;
+				}
+				int end = parseNumber();
+				if (end < 0 || !consume(")")) {
+					return null;
+				}
+				return new Substring(argument, begin, end);
+			}
+			if (consume("%LOWERCASE%(")) {
+				Node argument = parseArgument(false, true);
+				return argument == null ? null : new ChangeCase(argument, false);
+			}
+			if (consume("%UPPERCASE%(")) {
+				Node argument = parseArgument(false, true);
+				return argument == null ? null : new ChangeCase(argument, true);
+			}
+			if (consume("%SUM%(")) {
+				Node left = parseArgument(true, false);
+				if (left == null || !consume(",")) {
+					return null;
+				}
+				Node right = parseArgument(false, true);
+				return right == null ? null : new Sum(left, right);
+			}
+			if (consume("%CHINESENUMBERS%(")) {
+				Node argument = parseArgument(false, true);
+				return argument == null ? null : new ChineseNumbers(argument);
+			}
+
+			// %name(...)
+			int nameStart = ++pos;
+			while (pos < template.length() && isAlphanumeric(template.charAt(pos))) {
+				pos++;
+			}
+			if (pos == nameStart || !consume("(")) {
+				return null;
+			}
+			String name = template.substring(nameStart, pos - 1);
+			Node argument = parseArgument(false, true);
+			return argument == null ? null : new NormFunction(name, argument);
+		}
+
+		/**
+		 * @return the argument, after which the parser stands at the "," or past the ")"; null on a syntax error
+		 */
+		private Node parseArgument(boolean stopAtComma, boolean stopAtParenthesis) {
+			Node argument = parseSequence(stopAtComma, stopAtParenthesis);
+			if (argument == null || pos >= template.length()) {
+				return null;
+			}
+			if (stopAtParenthesis) {
+				pos++;
+			}
+			return argument;
+		}
+
+		// a non-negative number, -1 if there is none
+		private int parseNumber() {
+			int start = pos;
+			while (pos < template.length() && '0' <= template.charAt(pos) && template.charAt(pos) <= '9') {
+				pos++;
+			}
+			if (pos == start || pos - start > 9) {
+				return -1;
+			}
+			return Integer.parseInt(template.substring(start, pos));
+		}
+
+		private boolean consume(String token) {
+			if (template.startsWith(token, pos)) {
+				pos += token.length();
+				return true;
+			}
+			return false;
+		}
+
+		private static boolean isAlphanumeric(char c) {
+			return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || ('0' <= c && c <= '9');
+		}
+	}
+}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.unihd.dbs.uima.annotator.heideltime.utilities.Logger;
 /**
@@ -16,7 +17,7 @@ import de.unihd.dbs.uima.annotator.heideltime.utilities.Logger;
  *
  */
 public class RePatternManager extends GenericResourceManager {
-	protected static HashMap<Language, RePatternManager> instances = new HashMap<Language, RePatternManager>();
+	protected static ConcurrentHashMap<Language, RePatternManager> instances = new ConcurrentHashMap<Language, RePatternManager>();
 	
 	// STORE PATTERNS AND NORMALIZATIONS
 	private TreeMap<String, String> hmAllRePattern;
@@ -47,12 +48,19 @@ public class RePatternManager extends GenericResourceManager {
 	 * @return singleton instance of RePatternManager
 	 */
 	public static RePatternManager getInstance(Language language) {
-		if(!instances.containsKey(language)) {
-			RePatternManager nm = new RePatternManager(language.getResourceFolder());
-			instances.put(language, nm);
+		RePatternManager nm = instances.get(language);
+		if(nm == null) {
+			// read the resources once, even if several threads ask for them at the same time
+			synchronized(instances) {
+				nm = instances.get(language);
+				if(nm == null) {
+					nm = new RePatternManager(language.getResourceFolder());
+					instances.put(language, nm);
+				}
+			}
 		}
 		
-		return instances.get(language);
+		return nm;
 	}
 	
 	
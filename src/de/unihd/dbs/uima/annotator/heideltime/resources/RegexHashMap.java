@@ -6,10 +6,12 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
  * Implements a HashMap extended with regular expression keys and caching functionality.
+ * Once filled, it can be read by several threads, i.e., the cache filled by get() is a ConcurrentHashMap.
  *  
  * @author Julian Zell
  *
@@ -17,7 +19,7 @@ import java.util.regex.Pattern;
 public class RegexHashMap<T> implements Map<String, T> {
 	
 	private HashMap<String, T> container = new HashMap<String, T>();
-	private HashMap<String, T> cache = new HashMap<String, T>();
+	private ConcurrentHashMap<String, T> cache = new ConcurrentHashMap<String, T>();
 	
 	/**
 	 * clears both the container and the cache hashmaps
@@ -33,7 +35,7 @@ public class RegexHashMap<T> implements Map<String, T> {
 	 */
 	public boolean containsKey(Object key) {
 		// the key is a direct hit from our cache
-		if(cache.containsKey(key))
+		if(key != null && cache.containsKey(key))
 			return true;
 		// the key is a direct hit from our hashmap
 		if(container.containsKey(key))
@@ -55,7 +57,7 @@ public class RegexHashMap<T> implements Map<String, T> {
 	 */
 	public boolean containsValue(Object value) {
 		// the value is a direct hit from our cache
-		if(cache.containsValue(value))
+		if(value != null && cache.containsValue(value))
 			return true;
 		// the value is a direct hit from our hashmap
 		if(container.containsValue(value))
@@ -105,7 +107,8 @@ public class RegexHashMap<T> implements Map<String, T> {
 				Entry<String, T> entry = regexKeys.next();
 				// check if the key is a regex matching the input key
 				if(Pattern.matches(entry.getKey(), (String) key)) {
-					putCache((String) key, entry.getValue());
+					if(entry.getValue() != null)
+						putCache((String) key, entry.getValue());
 					return entry.getValue();
 				}
 			}
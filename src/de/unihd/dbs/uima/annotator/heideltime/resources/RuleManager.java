@@ -3,11 +3,16 @@ package de.unihd.dbs.uima.annotator.heideltime.resources;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 
 import de.unihd.dbs.uima.annotator.heideltime.utilities.Logger;
+import de.unihd.dbs.uima.annotator.heideltime.utilities.RuleAutomaton;
 import de.unihd.dbs.uima.annotator.heideltime.utilities.Toolbox;
 
 /**
@@ -20,7 +25,7 @@ import de.unihd.dbs.uima.annotator.heideltime.utilities.Toolbox;
  * 
  */
 public class RuleManager extends GenericResourceManager {
-	protected static HashMap<Language, RuleManager> instances = new HashMap<Language, RuleManager>();
+	protected static ConcurrentHashMap<Language, RuleManager> instances = new ConcurrentHashMap<Language, RuleManager>();
 
 	// PATTERNS TO READ RESOURCES "RULES" AND "NORMALIZATION"
 	Pattern paReadRules = Pattern
@@ -73,6 +78,18 @@ public class RuleManager extends GenericResourceManager {
 	HashMap<String, String> hmTimeEmptyValue = new HashMap<String, String>();
 	HashMap<String, String> hmDurationEmptyValue = new HashMap<String, String>();
 	HashMap<String, String> hmSetEmptyValue = new HashMap<String, String>();
+	
+	// ALL PARTS OF RULES, SORTED BY RULE NAME (built once the files are read)
+	CompiledRule[] dateRules;
+	CompiledRule[] durationRules;
+	CompiledRule[] timeRules;
+	CompiledRule[] setRules;
+	
+	// THE PATTERNS OF EACH TYPE IN ONE AUTOMATON, IN THE ORDER OF THE RULES ABOVE
+	RuleAutomaton dateAutomaton;
+	RuleAutomaton durationAutomaton;
+	RuleAutomaton timeAutomaton;
+	RuleAutomaton setAutomaton;
 
 	/**
 	 * Constructor calls the parent constructor that sets language/resource
@@ -90,6 +107,57 @@ public class RuleManager extends GenericResourceManager {
 		// /////////////////////////////////////////////////
 		HashMap<String, String> hmResourcesRules = readResourcesFromDirectory();
 		readRules(hmResourcesRules, language);
+		
+		dateRules = compileRules(hmDatePattern, hmDateOffset, hmDateNormalization, hmDateQuant, 
+				hmDateFreq, hmDateMod, hmDatePosConstraint, hmDateEmptyValue);
+		durationRules = compileRules(hmDurationPattern, hmDurationOffset, hmDurationNormalization, hmDurationQuant, 
+				hmDurationFreq, hmDurationMod, hmDurationPosConstraint, hmDurationEmptyValue);
+		timeRules = compileRules(hmTimePattern, hmTimeOffset, hmTimeNormalization, hmTimeQuant, 
+				hmTimeFreq, hmTimeMod, hmTimePosConstraint, hmTimeEmptyValue);
+		setRules = compileRules(hmSetPattern, hmSetOffset, hmSetNormalization, hmSetQuant, 
+				hmSetFreq, hmSetMod, hmSetPosConstraint, hmSetEmptyValue);
+		
+		dateAutomaton = compileAutomaton(dateRules);
+		durationAutomaton = compileAutomaton(durationRules);
+		timeAutomaton = compileAutomaton(timeRules);
+		setAutomaton = compileAutomaton(setRules);
+	}
+	
+	/**
+	 * Gathers the parts of each rule of one type into a CompiledRule. The rules are sorted 
+	 * by their names, since the timexId decides which of two expressions with the same 
+	 * offset is removed later on.
+	 * 
+	 * @return the rules sorted by name
+	 */
+	private static CompiledRule[] compileRules(HashMap<Pattern, String> hmPattern, HashMap<String, String> hmOffset,
+			HashMap<String, String> hmNormalization, HashMap<String, String> hmQuant, HashMap<String, String> hmFreq,
+			HashMap<String, String> hmMod, HashMap<String, String> hmPosConstraint, HashMap<String, String> hmEmptyValue) {
+		CompiledRule[] rules = new CompiledRule[hmPattern.size()];
+		int i = 0;
+		for (Map.Entry<Pattern, String> entry : hmPattern.entrySet()) {
+			String name = entry.getValue();
+			rules[i++] = new CompiledRule(name, entry.getKey(), hmOffset.get(name), hmNormalization.get(name), 
+					hmQuant.get(name), hmFreq.get(name), hmMod.get(name), hmPosConstraint.get(name), hmEmptyValue.get(name));
+		}
+		
+		Arrays.sort(rules, new Comparator<CompiledRule>() {
+			public int compare(CompiledRule r1, CompiledRule r2) {
+				return r1.getName().compareTo(r2.getName());
+			}
+		});
+		return rules;
+	}
+
+	/**
+	 * @return the patterns of the rules in one RuleAutomaton, its i-th pattern being that of the i-th rule
+	 */
+	private static RuleAutomaton compileAutomaton(CompiledRule[] rules) {
+		Pattern[] patterns = new Pattern[rules.length];
+		for (int i = 0; i < rules.length; i++) {
+			patterns[i] = rules[i].getPattern();
+		}
+		return new RuleAutomaton(patterns);
 	}
 
 	/**
@@ -98,12 +166,19 @@ public class RuleManager extends GenericResourceManager {
 	 * @return singleton instance of RuleManager
 	 */
 	public static RuleManager getInstance(Language language) {
-		if(!instances.containsKey(language)) {
-			RuleManager nm = new RuleManager(language.getResourceFolder());
-			instances.put(language, nm);
+		RuleManager nm = instances.get(language);
+		if(nm == null) {
+			// read the resources once, even if several threads ask for them at the same time
+			synchronized(instances) {
+				nm = instances.get(language);
+				if(nm == null) {
+					nm = new RuleManager(language.getResourceFolder());
+					instances.put(language, nm);
+				}
+			}
 		}
 		
-		return instances.get(language);
+		return nm;
 	}
 
 	/**
@@ -113,7 +188,7 @@ public class RuleManager extends GenericResourceManager {
 	 * @param hmResourcesRules
 	 *            rules to be interpreted
 	 */
-	public void readRules(HashMap<String, String> hmResourcesRules, String language) {
+	private void readRules(HashMap<String, String> hmResourcesRules, String language) {
 		try {
 			for (String resource : hmResourcesRules.keySet()) {
 				BufferedReader br = new BufferedReader(new InputStreamReader(
@@ -393,6 +468,44 @@ public class RuleManager extends GenericResourceManager {
 		}
 	}
 
+	/**
+	 * @return the date rules sorted by name, not to be modified
+	 */
+	public final CompiledRule[] getDateRules() {
+		return dateRules;
+	}
+
+	public final CompiledRule[] getDurationRules() {
+		return durationRules;
+	}
+
+	public final CompiledRule[] getTimeRules() {
+		return timeRules;
+	}
+
+	public final CompiledRule[] getSetRules() {
+		return setRules;
+	}
+
+	/**
+	 * @return the patterns of the date rules in one automaton, in the order of getDateRules()
+	 */
+	public final RuleAutomaton getDateAutomaton() {
+		return dateAutomaton;
+	}
+
+	public final RuleAutomaton getDurationAutomaton() {
+		return durationAutomaton;
+	}
+
+	public final RuleAutomaton getTimeAutomaton() {
+		return timeAutomaton;
+	}
+
+	public final RuleAutomaton getSetAutomaton() {
+		return setAutomaton;
+	}
+
 	public final HashMap<Pattern, String> getHmDatePattern() {
 		return hmDatePattern;
 	}
@@ -0,0 +1,395 @@
+package de.unihd.dbs.uima.annotator.heideltime.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A 1024-bit signature of the characters of a text, i.e., a character sets the bit (c &amp; 1023), e.g., 年, 月 and 日
+ * set the bits 628, 776 and 485, and the digits 0-9 the bits 48-57. A sentence thus sets a few dozen bits at most.
+ *
+ * For a regular expression, requiredBy() derives the masks of which every match contains at least one
+ * character each, e.g., a digit and one of 年月 for "\\d+[年月]"; a sentence whose mask misses one of them
+ * cannot match. A construct that is not analyzed, e.g., an inline flag, only makes the masks less selective.
+ *
+ */
+public class CharacterMask {
+	private static final int WORDS = 16;
+	private static final int BITS = WORDS * 64;
+
+	// the masks kept per regular expression, the most selective ones
+	private static final int MAX_REQUIRED = 4;
+
+	// any character, i.e., nothing in particular is required
+	private static final long[] ALL = null;
+	private static final long[][] NO_REQUIRED = new long[0][];
+
+	/**
+	 * @return the mask of the characters of the text
+	 */
+	public static long[] of(CharSequence text) {
+		long[] mask = new long[WORDS];
+		for (int i = 0; i < text.length(); i++) {
+			int bit = text.charAt(i) & (BITS - 1);
+			mask[bit >>> 6] |= 1L << bit;
+		}
+		return mask;
+	}
+
+	/**
+	 * @param requiredMasks the masks of a regular expression, see requiredBy()
+	 * @param textMask the mask of a text
+	 * @return false if the regular expression cannot match within the text
+	 */
+	public static boolean mayMatch(long[][] requiredMasks, long[] textMask) {
+		for (long[] requiredMask : requiredMasks) {
+			if (!intersects(requiredMask, textMask)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param regex a regular expression compiled without flags
+	 * @return the masks of which every match contains at least one character each, empty if there are none
+	 */
+	public static long[][] requiredBy(String regex) {
+		try {
+			Analyzer analyzer = new Analyzer(regex);
+			ArrayList<long[]> required = analyzer.parseAlternation();
+			if (analyzer.pos != regex.length()) {
+				return NO_REQUIRED;
+			}
+			return required.toArray(new long[required.size()][]);
+		} catch (RuntimeException e) {
+			// not analyzed, e.g., an inline flag or a syntax error
+			return NO_REQUIRED;
+		}
+	}
+
+	private static boolean intersects(long[] mask1, long[] mask2) {
+		for (int i = 0; i < WORDS; i++) {
+			if ((mask1[i] & mask2[i]) != 0L) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long[] bit(char c) {
+		return range(c, c);
+	}
+
+	// the bits of the characters from first to last, ALL if it sets every bit
+	private static long[] range(char first, char last) {
+		if (last - first >= BITS - 1) {
+			return ALL;
+		}
+		long[] mask = new long[WORDS];
+		for (int c = first; c <= last; c++) {
+			int bit = c & (BITS - 1);
+			mask[bit >>> 6] |= 1L << bit;
+		}
+		return mask;
+	}
+
+	// the union of the masks, ALL if either is
+	private static long[] union(long[] mask1, long[] mask2) {
+		if (mask1 == ALL || mask2 == ALL) {
+			return ALL;
+		}
+		long[] mask = new long[WORDS];
+		for (int i = 0; i < WORDS; i++) {
+			mask[i] = mask1[i] | mask2[i];
+		}
+		return mask;
+	}
+
+	private static int bitCount(long[] mask) {
+		int count = 0;
+		for (long word : mask) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Reads the regular expression once. The parse methods return the required masks of what they have read,
+	 * the most selective first, or an empty list if it may match without any particular character, e.g., "a?" or ".".
+	 */
+	private static class Analyzer {
+		private static final long[] DIGITS = range('0', '9');
+		private static final long[] WHITESPACES = union(range('\t', '\r'), bit(' '));
+		private static final long[] WORD_CHARACTERS = union(union(range('a', 'z'), range('A', 'Z')), union(DIGITS, bit('_')));
+
+		private final String regex;
+		private int pos = 0;
+
+		// the mask of the last escape that is no literal, e.g., \d
+		private long[] escapedMask;
+
+		Analyzer(String regex) {
+			this.regex = regex;
+		}
+
+		// a|b|..., each branch may match on its own, thus only one mask is kept: the union of their most selective ones
+		ArrayList<long[]> parseAlternation() {
+			ArrayList<long[]> required = parseConcatenation();
+			if (pos >= regex.length() || regex.charAt(pos) != '|') {
+				return required;
+			}
+
+			long[] union = mostSelective(required);
+			while (pos < regex.length() && regex.charAt(pos) == '|') {
+				pos++;
+				union = union(union, mostSelective(parseConcatenation()));
+			}
+			return single(union);
+		}
+
+		// ab..., each part is required
+		private ArrayList<long[]> parseConcatenation() {
+			ArrayList<long[]> required = new ArrayList<long[]>();
+			while (pos < regex.length() && regex.charAt(pos) != '|' && regex.charAt(pos) != ')') {
+				ArrayList<long[]> atom = parseAtom();
+				if (parseQuantifier() > 0) {
+					for (long[] mask : atom) {
+						add(required, mask);
+					}
+				}
+			}
+			return required;
+		}
+
+		private ArrayList<long[]> parseAtom() {
+			char c = regex.charAt(pos++);
+			switch (c) {
+			case '(':
+				return parseGroup();
+			case '[':
+				return single(parseClass());
+			case '.':
+			case '^':
+			case '$':
+				return single(ALL);
+			case '\\':
+				if (regex.charAt(pos) == 'Q') {
+					// \Q...\E, every character of it is required
+					int end = regex.indexOf("\\E", ++pos);
+					String quoted = end < 0 ? regex.substring(pos) : regex.substring(pos, end);
+					pos = end < 0 ? regex.length() : end + 2;
+					return single(quoted.isEmpty() ? ALL : bit(quoted.charAt(0)));
+				}
+				int literal = parseEscape();
+				return single(literal < 0 ? escapedMask : bit((char) literal));
+			case '*':
+			case '+':
+			case '?':
+			case '{':
+				throw new IllegalArgumentException("dangling quantifier at " + pos);
+			default:
+				return single(bit(c));
+			}
+		}
+
+		// (...), after the (
+		private ArrayList<long[]> parseGroup() {
+			boolean lookAround = false;
+			if (regex.startsWith("?:", pos) || regex.startsWith("?>", pos)) {
+				pos += 2;
+			} else if (regex.startsWith("?=", pos) || regex.startsWith("?!", pos)) {
+				pos += 2;
+				lookAround = true;
+			} else if (regex.startsWith("?<=", pos) || regex.startsWith("?<!", pos)) {
+				pos += 3;
+				lookAround = true;
+			} else if (regex.startsWith("?<", pos)) {
+				// named group
+				pos = regex.indexOf('>', pos) + 1;
+			} else if (regex.startsWith("?", pos)) {
+				throw new IllegalArgumentException("inline flags at " + pos);
+			}
+
+			ArrayList<long[]> required = parseAlternation();
+			if (regex.charAt(pos++) != ')') {
+				throw new IllegalArgumentException("unclosed group at " + pos);
+			}
+			// a look-around does not consume, and a negative one requires nothing
+			return lookAround ? single(ALL) : required;
+		}
+
+		// the minimum number of repetitions of the atom before
+		private int parseQuantifier() {
+			if (pos >= regex.length()) {
+				return 1;
+			}
+
+			int min;
+			char c = regex.charAt(pos);
+			if (c == '*' || c == '?') {
+				min = 0;
+				pos++;
+			} else if (c == '+') {
+				min = 1;
+				pos++;
+			} else if (c == '{') {
+				int close = regex.indexOf('}', pos);
+				String bounds = regex.substring(pos + 1, close);
+				int comma = bounds.indexOf(',');
+				min = Integer.parseInt((comma < 0 ? bounds : bounds.substring(0, comma)).trim());
+				pos = close + 1;
+			} else {
+				return 1;
+			}
+
+			// reluctant or possessive
+			if (pos < regex.length() && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+')) {
+				pos++;
+			}
+			return min;
+		}
+
+		// [...], after the [
+		private long[] parseClass() {
+			boolean negated = false;
+			if (regex.charAt(pos) == '^') {
+				negated = true;
+				pos++;
+			}
+
+			long[] mask = new long[WORDS];
+			boolean first = true;
+			while (true) {
+				char c = regex.charAt(pos++);
+				if (c == ']' && !first) {
+					break;
+				}
+				first = false;
+
+				if (c == '[') {
+					mask = union(mask, parseClass());
+				} else if (c == '&' && regex.charAt(pos) == '&') {
+					// an intersection is a subset of the union of its operands
+					pos++;
+				} else if (c == '\\') {
+					int literal = parseEscape();
+					mask = union(mask, literal < 0 ? escapedMask : parseRange((char) literal));
+				} else {
+					mask = union(mask, parseRange(c));
+				}
+			}
+
+			return negated ? ALL : mask;
+		}
+
+		// the mask of first, or of the range first-last
+		private long[] parseRange(char first) {
+			if (regex.charAt(pos) != '-' || regex.charAt(pos + 1) == ']' || regex.charAt(pos + 1) == '[') {
+				return bit(first);
+			}
+
+			pos++;
+			char last = regex.charAt(pos++);
+			if (last == '\\') {
+				int literal = parseEscape();
+				if (literal < 0) {
+					throw new IllegalArgumentException("illegal range at " + pos);
+				}
+				last = (char) literal;
+			}
+			return range(first, last);
+		}
+
+		/**
+		 * \..., after the backslash
+		 * @return the escaped character, or -1 for a character class or an assertion, whose mask is then escapedMask
+		 */
+		private int parseEscape() {
+			char c = regex.charAt(pos++);
+			switch (c) {
+			case 'd':
+				escapedMask = DIGITS;
+				return -1;
+			case 's':
+				escapedMask = WHITESPACES;
+				return -1;
+			case 'w':
+				escapedMask = WORD_CHARACTERS;
+				return -1;
+			case 't':
+				return '\t';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 'f':
+				return '\f';
+			case 'a':
+				return '\u0007';
+			case 'e':
+				return '\u001B';
+			case 'u':
+				pos += 4;
+				return Integer.parseInt(regex.substring(pos - 4, pos), 16);
+			case 'x':
+				if (regex.charAt(pos) == '{') {
+					throw new IllegalArgumentException("code point escape at " + pos);
+				}
+				pos += 2;
+				return Integer.parseInt(regex.substring(pos - 2, pos), 16);
+			case 'p':
+			case 'P':
+				pos = regex.charAt(pos) == '{' ? regex.indexOf('}', pos) + 1 : pos + 1;
+				escapedMask = ALL;
+				return -1;
+			case 'k':
+				pos = regex.indexOf('>', pos) + 1;
+				escapedMask = ALL;
+				return -1;
+			case 'c':
+			case '0':
+				throw new IllegalArgumentException("control or octal escape at " + pos);
+			default:
+				if (Character.isLetterOrDigit(c)) {
+					// \D, \S, \W, \b, \B, \A, \z, \Z, \G and the back references
+					escapedMask = ALL;
+					return -1;
+				}
+				return c;
+			}
+		}
+
+		private static ArrayList<long[]> single(long[] mask) {
+			ArrayList<long[]> required = new ArrayList<long[]>();
+			if (mask != ALL) {
+				required.add(mask);
+			}
+			return required;
+		}
+
+		// keeps the MAX_REQUIRED most selective masks, i.e., with the fewest bits, in that order
+		private static void add(ArrayList<long[]> required, long[] mask) {
+			if (mask == ALL) {
+				return;
+			}
+			for (long[] other : required) {
+				if (Arrays.equals(other, mask)) {
+					return;
+				}
+			}
+
+			int i = 0;
+			while (i < required.size() && bitCount(required.get(i)) <= bitCount(mask)) {
+				i++;
+			}
+			required.add(i, mask);
+			if (required.size() > MAX_REQUIRED) {
+				required.remove(MAX_REQUIRED);
+			}
+		}
+
+		private static long[] mostSelective(ArrayList<long[]> required) {
+			return required.isEmpty() ? ALL : required.get(0);
+		}
+	}
+}
@@ -219,6 +219,26 @@ public class ContextAnalyzer {
 		return xValue;
 	}
 	
+	/**
+	 * Get the sentence whose tokens decide the tense of the timex, i.e., the first one that strictly contains it,
+	 * otherwise the last sentence of the document
+	 * 
+	 * @param timex timex construct to discover tense data for
+	 * @return the sentence, an empty one if the document has none
+	 */
+	public static Sentence getSentence(Timex3 timex, JCas jcas) {
+		FSIterator iterSentence = jcas.getAnnotationIndex(Sentence.type).iterator();
+		Sentence s = new Sentence(jcas);
+		while (iterSentence.hasNext()) {
+			s = (Sentence) iterSentence.next();
+			if ((s.getBegin() < timex.getBegin())
+					&& (s.getEnd() > timex.getEnd())) {
+				break;
+			}
+		}
+		return s;
+	}
+	
 	/**
 	 * Get the last tense used in the sentence
 	 * 
@@ -237,15 +257,7 @@ public class ContextAnalyzer {
 		int tid    = 0;
 
 		// Get the sentence
-		FSIterator iterSentence = jcas.getAnnotationIndex(Sentence.type).iterator();
-		Sentence s = new Sentence(jcas);
-		while (iterSentence.hasNext()) {
-			s = (Sentence) iterSentence.next();
-			if ((s.getBegin() < timex.getBegin())
-					&& (s.getEnd() > timex.getEnd())) {
-				break;
-			}
-		}
+		Sentence s = getSentence(timex, jcas);
 
 		// Get the tokens
 		TreeMap<Integer, Token> tmToken = new TreeMap<Integer, Token>();
@@ -359,15 +371,7 @@ public class ContextAnalyzer {
 		String lastTense = "";
 
 		// Get the sentence
-		FSIterator iterSentence = jcas.getAnnotationIndex(Sentence.type).iterator();
-		Sentence s = new Sentence(jcas);
-		while (iterSentence.hasNext()) {
-			s = (Sentence) iterSentence.next();
-			if ((s.getBegin() < timex.getBegin())
-					&& (s.getEnd() > timex.getEnd())) {
-				break;
-			}
-		}
+		Sentence s = getSentence(timex, jcas);
 
 		// Get the tokens
 		TreeMap<Integer, Token> tmToken = new TreeMap<Integer, Token>();
@@ -0,0 +1,945 @@
+package de.unihd.dbs.uima.annotator.heideltime.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The extraction patterns of the rules of one type compiled into one automaton, i.e., a Pike VM program with an
+ * entry per pattern, which looks for the matches of all the patterns in a single left-to-right scan of a sentence
+ * instead of one backtracking java.util.regex scan per pattern and start position.
+ *
+ * The threads of a pattern carry only the position where they started, and are kept in the order of it, thus
+ * the scan finds the leftmost start of a match without backtracking. Only there the Matcher of the pattern is
+ * run, anchored, for the match and its groups, which are then those of Matcher.find(). The scan of the pattern
+ * resumes at the end of the match. A sentence without a match of a pattern is thus never searched by its Matcher.
+ *
+ * A pattern with a construct that is not compiled, e.g., a look-around, a back reference, an anchor, an inline flag,
+ * an intersection of classes or a match of the empty string, is left to java.util.regex (see isCompiled()),
+ * and so is a text with surrogates.
+ *
+ */
+public class RuleAutomaton {
+	// instructions of the program
+	private static final int CHAR = 0;
+	private static final int CLASS = 1;
+	private static final int ANY = 2;
+	private static final int SPLIT = 3;
+	private static final int JMP = 4;
+	private static final int MATCH = 5;
+
+	// a larger pattern, e.g., by repeating a long alternation, is left to java.util.regex
+	private static final int MAX_PROGRAM_SIZE = 50000;
+
+	private final Pattern[] patterns;
+
+	private final int[] op;
+	private final int[] arg1;
+	private final int[] arg2;
+	private final CharClass[] classes;
+
+	// per pattern, the entry is -1 if it is not compiled
+	private final int[] entry;
+	private final int[] threadCapacity;
+
+	// per instruction, whether its threads may go on with any character, i.e., may reach MATCH without reading
+	// or read any character first, and else the CharacterMask of those they may read first at [pc * MASK_WORDS]
+	private static final int MASK_WORDS = CharacterMask.of("").length;
+	private final boolean[] continuesAlways;
+	private final long[] firstMasks;
+
+	/**
+	 * @param patterns the patterns, a pattern compiled with flags is left to java.util.regex
+	 */
+	public RuleAutomaton(Pattern[] patterns) {
+		this.patterns = patterns.clone();
+		Program program = new Program();
+		entry = new int[patterns.length];
+		threadCapacity = new int[patterns.length];
+
+		for (int rule = 0; rule < patterns.length; rule++) {
+			entry[rule] = -1;
+			if (patterns[rule].flags() != 0) {
+				continue;
+			}
+
+			int start = program.size;
+			int classCount = program.classes.size();
+			try {
+				Node root = new Parser(patterns[rule].pattern()).parse();
+				if (root.nullable()) {
+					throw new IllegalArgumentException("matches the empty string");
+				}
+				root.emit(program);
+				program.emit(MATCH, rule, 0);
+				if (program.size - start > MAX_PROGRAM_SIZE) {
+					throw new IllegalArgumentException("program too large");
+				}
+
+				entry[rule] = start;
+				threadCapacity[rule] = program.size - start;
+			} catch (RuntimeException e) {
+				program.truncate(start, classCount);
+			}
+		}
+
+		op = Arrays.copyOf(program.op, program.size);
+		arg1 = Arrays.copyOf(program.arg1, program.size);
+		arg2 = Arrays.copyOf(program.arg2, program.size);
+		classes = program.classes.toArray(new CharClass[program.classes.size()]);
+
+		long[][] masks = new long[op.length][];
+		boolean[] matchesEmpty = new boolean[op.length];
+		boolean[] computed = new boolean[op.length];
+		continuesAlways = new boolean[op.length];
+		firstMasks = new long[op.length * MASK_WORDS];
+		for (int pc = op.length - 1; pc >= 0; pc--) {
+			computeFirst(pc, masks, matchesEmpty, computed);
+			continuesAlways[pc] = matchesEmpty[pc] || masks[pc] == null;
+			if (!continuesAlways[pc]) {
+				System.arraycopy(masks[pc], 0, firstMasks, pc * MASK_WORDS, MASK_WORDS);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of patterns
+	 */
+	public int size() {
+		return entry.length;
+	}
+
+	/**
+	 * @return false if the pattern is left to java.util.regex
+	 */
+	public boolean isCompiled(int rule) {
+		return entry[rule] >= 0;
+	}
+
+	/**
+	 * @param text the text to search
+	 * @param active the patterns to search for, e.g., those whose CharacterMask is in the text; null for all
+	 * @return per pattern its matches in order, as by successive Matcher.find(); null for a pattern that is not
+	 * 			active or not compiled, and for all of them if the text has surrogates
+	 */
+	public MatchResult[][] findAll(String text, boolean[] active) {
+		MatchResult[][] results = new MatchResult[entry.length][];
+		for (int i = 0; i < text.length(); i++) {
+			if (Character.isSurrogate(text.charAt(i))) {
+				return results;
+			}
+		}
+
+		Scan[] scans = new Scan[entry.length];
+		int scanCount = 0;
+		for (int rule = 0; rule < entry.length; rule++) {
+			if (entry[rule] >= 0 && (active == null || active[rule])) {
+				scans[scanCount++] = new Scan(rule, text);
+			}
+		}
+
+		// each position is stepped for all the patterns, before the next one
+		for (int pos = 0; pos <= text.length(); pos++) {
+			for (int i = 0; i < scanCount; i++) {
+				Scan scan = scans[i];
+				while (scan.pos <= pos) {
+					scan.step();
+				}
+			}
+		}
+
+		for (int i = 0; i < scanCount; i++) {
+			ArrayList<MatchResult> matches = scans[i].matches;
+			results[scans[i].rule] = matches.toArray(new MatchResult[matches.size()]);
+		}
+		return results;
+	}
+
+	private boolean reads(int pc, char c) {
+		switch (op[pc]) {
+		case CHAR:
+			return c == arg1[pc];
+		case CLASS:
+			return classes[arg1[pc]].matches(c);
+		default:
+			// ANY, i.e., "." without DOTALL
+			return c != '\n' && c != '\r' && c != '\u0085' && c != '\u2028' && c != '\u2029';
+		}
+	}
+
+	/**
+	 * sets the mask of the characters that the threads at pc may read first, null for any,
+	 * and whether they may match without reading
+	 */
+	private void computeFirst(int pc, long[][] masks, boolean[] matchesEmpty, boolean[] computed) {
+		if (computed[pc]) {
+			return;
+		}
+		computed[pc] = true;
+
+		switch (op[pc]) {
+		case CHAR:
+			masks[pc] = CharacterMask.of(String.valueOf((char) arg1[pc]));
+			break;
+		case CLASS:
+			StringBuilder chars = new StringBuilder();
+			masks[pc] = classes[arg1[pc]].appendChars(chars) ? CharacterMask.of(chars) : null;
+			break;
+		case ANY:
+			masks[pc] = null;
+			break;
+		case SPLIT:
+			computeFirst(arg1[pc], masks, matchesEmpty, computed);
+			computeFirst(arg2[pc], masks, matchesEmpty, computed);
+			masks[pc] = union(masks[arg1[pc]], masks[arg2[pc]]);
+			matchesEmpty[pc] = matchesEmpty[arg1[pc]] || matchesEmpty[arg2[pc]];
+			break;
+		case JMP:
+			computeFirst(arg1[pc], masks, matchesEmpty, computed);
+			masks[pc] = masks[arg1[pc]];
+			matchesEmpty[pc] = matchesEmpty[arg1[pc]];
+			break;
+		default:
+			// MATCH
+			masks[pc] = new long[0];
+			matchesEmpty[pc] = true;
+			break;
+		}
+	}
+
+	// the union of the masks, null if either is
+	private static long[] union(long[] mask1, long[] mask2) {
+		if (mask1 == null || mask2 == null) {
+			return null;
+		}
+		if (mask1.length == 0) {
+			return mask2;
+		}
+		if (mask2.length == 0) {
+			return mask1;
+		}
+		long[] mask = new long[mask1.length];
+		for (int i = 0; i < mask.length; i++) {
+			mask[i] = mask1[i] | mask2[i];
+		}
+		return mask;
+	}
+
+	// false if no thread at pc can go on with the character at pos
+	private boolean mayContinue(int pc, String text, int pos) {
+		if (continuesAlways[pc]) {
+			return true;
+		}
+		if (pos >= text.length()) {
+			return false;
+		}
+		int bit = text.charAt(pos) & (MASK_WORDS * 64 - 1);
+		return (firstMasks[pc * MASK_WORDS + (bit >>> 6)] & (1L << bit)) != 0L;
+	}
+
+	/**
+	 * The search of one pattern, i.e., its threads at the next position, in the order of their starts.
+	 */
+	private class Scan {
+		private final int rule;
+		private final String text;
+		private final int entryPc;
+
+		// the next position to step
+		private int pos = 0;
+
+		private int[] pcs;
+		private int[] starts;
+		private int count = 0;
+		private int[] nextPcs;
+		private int[] nextStarts;
+		// per instruction of the pattern, the last generation of threads that reached it
+		private int[] marks;
+		private int generation = 0;
+		// the generation of the threads at pos, -1 if there are none
+		private int listGeneration = -1;
+
+		// the leftmost start of a match so far, -1 if there is none
+		private int matchStart = -1;
+		private Matcher matcher;
+		private final ArrayList<MatchResult> matches = new ArrayList<MatchResult>();
+
+		Scan(int rule, String text) {
+			this.rule = rule;
+			this.text = text;
+			this.entryPc = entry[rule];
+		}
+
+		/**
+		 * advances the threads over the character at pos
+		 */
+		void step() {
+			if (count == 0) {
+				// no thread is left, on to the next character that may begin a match
+				while (pos < text.length() && !mayContinue(entryPc, text, pos)) {
+					pos++;
+				}
+			}
+
+			// a new thread, unless a match is found already
+			if (matchStart < 0 && pos < text.length() && mayContinue(entryPc, text, pos)) {
+				if (pcs == null) {
+					// only for the patterns that may begin at all
+					pcs = new int[threadCapacity[rule]];
+					starts = new int[threadCapacity[rule]];
+					nextPcs = new int[threadCapacity[rule]];
+					nextStarts = new int[threadCapacity[rule]];
+					marks = new int[threadCapacity[rule]];
+				}
+				if (listGeneration < 0) {
+					listGeneration = ++generation;
+				}
+				count = addThread(pcs, starts, count, entryPc, pos, pos, listGeneration);
+			}
+
+			if (count == 0) {
+				pos++;
+				listGeneration = -1;
+				return;
+			}
+
+			int nextGeneration = ++generation;
+			int nextCount = 0;
+			for (int i = 0; i < count; i++) {
+				if (op[pcs[i]] == MATCH) {
+					// the threads after this one started later, or at the same position
+					matchStart = starts[i];
+					break;
+				}
+				// the character is read, as checked by addThread()
+				if (mayContinue(pcs[i] + 1, text, pos + 1)) {
+					nextCount = addThread(nextPcs, nextStarts, nextCount, pcs[i] + 1, starts[i], pos + 1, nextGeneration);
+				}
+			}
+
+			int[] swap = pcs;
+			pcs = nextPcs;
+			nextPcs = swap;
+			swap = starts;
+			starts = nextStarts;
+			nextStarts = swap;
+			count = nextCount;
+			listGeneration = nextGeneration;
+			pos++;
+
+			if (matchStart >= 0 && (count == 0 || starts[0] >= matchStart)) {
+				// no thread that started before is left
+				addMatch();
+			}
+		}
+
+		private void addMatch() {
+			if (matcher == null) {
+				matcher = patterns[rule].matcher(text);
+			}
+			matcher.region(matchStart, text.length());
+			if (!matcher.lookingAt()) {
+				throw new IllegalStateException("no match of " + patterns[rule] + " at " + matchStart);
+			}
+			matches.add(matcher.toMatchResult());
+
+			// the search goes on after the match
+			pos = matcher.end();
+			count = 0;
+			listGeneration = -1;
+			matchStart = -1;
+		}
+
+		/**
+		 * adds the thread at pc and those it leads to without reading, except those that cannot read the character at pos
+		 * @return the new number of threads
+		 */
+		private int addThread(int[] pcs, int[] starts, int count, int pc, int start, int pos, int listGeneration) {
+			// a thread that started before reached pc already
+			if (marks[pc - entryPc] == listGeneration) {
+				return count;
+			}
+			marks[pc - entryPc] = listGeneration;
+
+			// the branches that cannot go on are not followed at all
+			switch (op[pc]) {
+			case JMP:
+				if (mayContinue(arg1[pc], text, pos)) {
+					count = addThread(pcs, starts, count, arg1[pc], start, pos, listGeneration);
+				}
+				return count;
+			case SPLIT:
+				if (mayContinue(arg1[pc], text, pos)) {
+					count = addThread(pcs, starts, count, arg1[pc], start, pos, listGeneration);
+				}
+				if (mayContinue(arg2[pc], text, pos)) {
+					count = addThread(pcs, starts, count, arg2[pc], start, pos, listGeneration);
+				}
+				return count;
+			case MATCH:
+				break;
+			default:
+				if (pos >= text.length() || !reads(pc, text.charAt(pos))) {
+					return count;
+				}
+				break;
+			}
+
+			pcs[count] = pc;
+			starts[count] = start;
+			return count + 1;
+		}
+	}
+
+	// ///////////////////////////////////////////////
+	// PROGRAM                                      //
+	// ///////////////////////////////////////////////
+	private static class Program {
+		private int[] op = new int[1024];
+		private int[] arg1 = new int[1024];
+		private int[] arg2 = new int[1024];
+		private int size = 0;
+		private final ArrayList<CharClass> classes = new ArrayList<CharClass>();
+
+		int emit(int instruction, int a1, int a2) {
+			if (size == op.length) {
+				op = Arrays.copyOf(op, 2 * size);
+				arg1 = Arrays.copyOf(arg1, 2 * size);
+				arg2 = Arrays.copyOf(arg2, 2 * size);
+			}
+			op[size] = instruction;
+			arg1[size] = a1;
+			arg2[size] = a2;
+			return size++;
+		}
+
+		void truncate(int newSize, int classCount) {
+			size = newSize;
+			while (classes.size() > classCount) {
+				classes.remove(classes.size() - 1);
+			}
+		}
+	}
+
+	// ///////////////////////////////////////////////
+	// SYNTAX TREE                                  //
+	// ///////////////////////////////////////////////
+	private static abstract class Node {
+		abstract boolean nullable();
+
+		abstract void emit(Program program);
+	}
+
+	private static class CharNode extends Node {
+		private final char c;
+
+		CharNode(char c) {
+			this.c = c;
+		}
+
+		boolean nullable() {
+			return false;
+		}
+
+		void emit(Program program) {
+			program.emit(CHAR, c, 0);
+		}
+	}
+
+	private static class ClassNode extends Node {
+		private final CharClass charClass;
+
+		ClassNode(CharClass charClass) {
+			this.charClass = charClass;
+		}
+
+		boolean nullable() {
+			return false;
+		}
+
+		void emit(Program program) {
+			if (!charClass.negated && charClass.nested.isEmpty() && charClass.ranges.size() == 1
+					&& charClass.ranges.get(0)[0] == charClass.ranges.get(0)[1]) {
+				program.emit(CHAR, charClass.ranges.get(0)[0], 0);
+				return;
+			}
+			charClass.freeze();
+			program.classes.add(charClass);
+			program.emit(CLASS, program.classes.size() - 1, 0);
+		}
+	}
+
+	private static class AnyNode extends Node {
+		boolean nullable() {
+			return false;
+		}
+
+		void emit(Program program) {
+			program.emit(ANY, 0, 0);
+		}
+	}
+
+	private static class Concatenation extends Node {
+		private final ArrayList<Node> parts;
+
+		Concatenation(ArrayList<Node> parts) {
+			this.parts = parts;
+		}
+
+		boolean nullable() {
+			for (Node part : parts) {
+				if (!part.nullable()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		void emit(Program program) {
+			for (Node part : parts) {
+				part.emit(program);
+			}
+		}
+	}
+
+	// a|b|...
+	private static class Alternation extends Node {
+		private final ArrayList<Node> branches;
+
+		Alternation(ArrayList<Node> branches) {
+			this.branches = branches;
+		}
+
+		boolean nullable() {
+			for (Node branch : branches) {
+				if (branch.nullable()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		void emit(Program program) {
+			ArrayList<Integer> jumps = new ArrayList<Integer>();
+			for (int i = 0; i < branches.size() - 1; i++) {
+				int split = program.emit(SPLIT, program.size + 1, -1);
+				branches.get(i).emit(program);
+				jumps.add(program.emit(JMP, -1, 0));
+				program.arg2[split] = program.size;
+			}
+			branches.get(branches.size() - 1).emit(program);
+
+			for (int jump : jumps) {
+				program.arg1[jump] = program.size;
+			}
+		}
+	}
+
+	// X{min,max}, max is -1 for no limit
+	private static class Repetition extends Node {
+		private final Node inner;
+		private final int min;
+		private final int max;
+
+		Repetition(Node inner, int min, int max) {
+			// an empty iteration is handled differently by java.util.regex, except for X?
+			if (inner.nullable() && !(min == 0 && max == 1)) {
+				throw new IllegalArgumentException("repetition of a possibly empty expression");
+			}
+			this.inner = inner;
+			this.min = min;
+			this.max = max;
+		}
+
+		boolean nullable() {
+			return min == 0 || inner.nullable();
+		}
+
+		void emit(Program program) {
+			for (int i = 0; i < min; i++) {
+				inner.emit(program);
+			}
+
+			if (max < 0) {
+				// L: SPLIT body, end; body; JMP L
+				int split = program.emit(SPLIT, -1, -1);
+				inner.emit(program);
+				program.emit(JMP, split, 0);
+				program.arg1[split] = split + 1;
+				program.arg2[split] = program.size;
+				return;
+			}
+
+			// X(X(X)?)?, each skip goes to the end
+			ArrayList<Integer> splits = new ArrayList<Integer>();
+			for (int i = min; i < max; i++) {
+				splits.add(program.emit(SPLIT, -1, -1));
+				inner.emit(program);
+			}
+			for (int split : splits) {
+				program.arg1[split] = split + 1;
+				program.arg2[split] = program.size;
+			}
+		}
+	}
+
+	/**
+	 * A character class, i.e., ranges and nested classes, possibly negated.
+	 */
+	private static class CharClass {
+		// a larger class is no help for the first characters
+		private static final int MAX_FIRST_CHARS = 256;
+
+		private boolean negated = false;
+		private final ArrayList<char[]> ranges = new ArrayList<char[]>();
+		private final ArrayList<CharClass> nested = new ArrayList<CharClass>();
+
+		// the ASCII characters of the class, set by freeze()
+		private final long[] ascii = new long[2];
+
+		static CharClass range(char first, char last) {
+			CharClass charClass = new CharClass();
+			charClass.addRange(first, last);
+			return charClass;
+		}
+
+		CharClass negate() {
+			negated = !negated;
+			return this;
+		}
+
+		void addRange(char first, char last) {
+			ranges.add(new char[] {first, last});
+		}
+
+		/**
+		 * to be called once the class is parsed, before matches()
+		 */
+		void freeze() {
+			for (char c = 0; c < 128; c++) {
+				if (contains(c)) {
+					ascii[c >>> 6] |= 1L << c;
+				}
+			}
+		}
+
+		boolean matches(char c) {
+			if (c < 128) {
+				return (ascii[c >>> 6] & (1L << c)) != 0L;
+			}
+			return contains(c);
+		}
+
+		private boolean contains(char c) {
+			boolean in = false;
+			for (int i = 0; i < ranges.size() && !in; i++) {
+				char[] range = ranges.get(i);
+				in = range[0] <= c && c <= range[1];
+			}
+			for (int i = 0; i < nested.size() && !in; i++) {
+				in = nested.get(i).contains(c);
+			}
+			return in != negated;
+		}
+
+		/**
+		 * @return false if the class is negated or too large to list
+		 */
+		boolean appendChars(StringBuilder sb) {
+			if (negated) {
+				return false;
+			}
+			for (char[] range : ranges) {
+				if (range[1] - range[0] >= MAX_FIRST_CHARS) {
+					return false;
+				}
+				for (char c = range[0]; c <= range[1]; c++) {
+					sb.append(c);
+					if (c == Character.MAX_VALUE) {
+						break;
+					}
+				}
+			}
+			for (CharClass charClass : nested) {
+				if (!charClass.appendChars(sb)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	// ///////////////////////////////////////////////
+	// PARSER OF THE PATTERNS                       //
+	// ///////////////////////////////////////////////
+	private static class Parser {
+		private final String regex;
+		private int pos = 0;
+
+		// the class of the last escape that is no literal, e.g., \d
+		private CharClass escapedClass;
+
+		Parser(String regex) {
+			this.regex = regex;
+		}
+
+		Node parse() {
+			Node root = parseAlternation();
+			if (pos != regex.length()) {
+				throw new IllegalArgumentException("unbalanced parenthesis at " + pos);
+			}
+			return root;
+		}
+
+		private Node parseAlternation() {
+			ArrayList<Node> branches = new ArrayList<Node>();
+			branches.add(parseConcatenation());
+			while (pos < regex.length() && regex.charAt(pos) == '|') {
+				pos++;
+				branches.add(parseConcatenation());
+			}
+			return branches.size() == 1 ? branches.get(0) : new Alternation(branches);
+		}
+
+		private Node parseConcatenation() {
+			ArrayList<Node> parts = new ArrayList<Node>();
+			while (pos < regex.length() && regex.charAt(pos) != '|' && regex.charAt(pos) != ')') {
+				parts.add(parseQuantifier(parseAtom()));
+			}
+			return parts.size() == 1 ? parts.get(0) : new Concatenation(parts);
+		}
+
+		private Node parseAtom() {
+			char c = regex.charAt(pos++);
+			switch (c) {
+			case '(':
+				// the groups are left to the Matcher
+				if (regex.startsWith("?:", pos)) {
+					pos += 2;
+				} else if (regex.startsWith("?", pos)) {
+					throw new IllegalArgumentException("special group at " + pos);
+				}
+				Node inner = parseAlternation();
+				if (pos >= regex.length() || regex.charAt(pos++) != ')') {
+					throw new IllegalArgumentException("unclosed group at " + pos);
+				}
+				return inner;
+			case '[':
+				return new ClassNode(parseClass());
+			case '.':
+				return new AnyNode();
+			case '\\':
+				int literal = parseEscape();
+				return literal < 0 ? new ClassNode(escapedClass) : new CharNode((char) literal);
+			case '^':
+			case '$':
+			case '*':
+			case '+':
+			case '?':
+			case '{':
+				throw new IllegalArgumentException("anchor or dangling quantifier at " + pos);
+			default:
+				if (Character.isSurrogate(c)) {
+					throw new IllegalArgumentException("surrogate at " + pos);
+				}
+				return new CharNode(c);
+			}
+		}
+
+		private Node parseQuantifier(Node atom) {
+			if (pos >= regex.length()) {
+				return atom;
+			}
+
+			int min;
+			int max;
+			char c = regex.charAt(pos);
+			if (c == '*') {
+				min = 0;
+				max = -1;
+				pos++;
+			} else if (c == '+') {
+				min = 1;
+				max = -1;
+				pos++;
+			} else if (c == '?') {
+				min = 0;
+				max = 1;
+				pos++;
+			} else if (c == '{') {
+				pos++;
+				min = parseNumber();
+				max = min;
+				if (regex.charAt(pos) == ',') {
+					pos++;
+					max = regex.charAt(pos) == '}' ? -1 : parseNumber();
+				}
+				if (regex.charAt(pos++) != '}' || (max >= 0 && max < min)) {
+					throw new IllegalArgumentException("illegal repetition at " + pos);
+				}
+			} else {
+				return atom;
+			}
+
+			// a reluctant quantifier matches at the same starts, a possessive one may not
+			if (pos < regex.length() && regex.charAt(pos) == '?') {
+				pos++;
+			} else if (pos < regex.length() && regex.charAt(pos) == '+') {
+				throw new IllegalArgumentException("possessive quantifier at " + pos);
+			}
+			return new Repetition(atom, min, max);
+		}
+
+		private int parseNumber() {
+			int start = pos;
+			while (pos < regex.length() && '0' <= regex.charAt(pos) && regex.charAt(pos) <= '9') {
+				pos++;
+			}
+			if (pos == start || pos - start > 4) {
+				throw new IllegalArgumentException("illegal number at " + pos);
+			}
+			return Integer.parseInt(regex.substring(start, pos));
+		}
+
+		// [...], after the [
+		private CharClass parseClass() {
+			CharClass charClass = new CharClass();
+			if (regex.charAt(pos) == '^') {
+				charClass.negate();
+				pos++;
+			}
+
+			boolean first = true;
+			while (true) {
+				char c = regex.charAt(pos++);
+				if (c == ']' && !first) {
+					break;
+				}
+				first = false;
+
+				if (c == '[') {
+					if (charClass.negated) {
+						throw new IllegalArgumentException("nested class in a negated class at " + pos);
+					}
+					charClass.nested.add(parseClass());
+					continue;
+				}
+				if ((c == '&' && regex.charAt(pos) == '&') || Character.isSurrogate(c)) {
+					throw new IllegalArgumentException("intersection or surrogate at " + pos);
+				}
+
+				char low = c;
+				if (c == '\\') {
+					int literal = parseEscape();
+					if (literal < 0) {
+						charClass.nested.add(escapedClass);
+						continue;
+					}
+					low = (char) literal;
+				}
+
+				if (regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+					pos++;
+					char high = regex.charAt(pos++);
+					if (high == '[' || Character.isSurrogate(high)) {
+						throw new IllegalArgumentException("illegal range at " + pos);
+					}
+					if (high == '\\') {
+						int literal = parseEscape();
+						if (literal < 0) {
+							throw new IllegalArgumentException("illegal range at " + pos);
+						}
+						high = (char) literal;
+					}
+					if (high < low) {
+						throw new IllegalArgumentException("illegal range at " + pos);
+					}
+					charClass.addRange(low, high);
+				} else {
+					charClass.addRange(low, low);
+				}
+			}
+			return charClass;
+		}
+
+		/**
+		 * \..., after the backslash
+		 * @return the escaped character, or -1 for a class, which is then escapedClass
+		 */
+		private int parseEscape() {
+			char c = regex.charAt(pos++);
+			switch (c) {
+			case 'd':
+				escapedClass = digits();
+				return -1;
+			case 'D':
+				escapedClass = digits().negate();
+				return -1;
+			case 's':
+				escapedClass = whitespaces();
+				return -1;
+			case 'S':
+				escapedClass = whitespaces().negate();
+				return -1;
+			case 'w':
+				escapedClass = wordCharacters();
+				return -1;
+			case 'W':
+				escapedClass = wordCharacters().negate();
+				return -1;
+			case 't':
+				return '\t';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 'f':
+				return '\f';
+			case 'a':
+				return '\u0007';
+			case 'e':
+				return '\u001B';
+			case 'u':
+				pos += 4;
+				char escaped = (char) Integer.parseInt(regex.substring(pos - 4, pos), 16);
+				if (Character.isSurrogate(escaped)) {
+					throw new IllegalArgumentException("surrogate at " + pos);
+				}
+				return escaped;
+			case 'x':
+				if (regex.charAt(pos) == '{') {
+					throw new IllegalArgumentException("code point escape at " + pos);
+				}
+				pos += 2;
+				return Integer.parseInt(regex.substring(pos - 2, pos), 16);
+			default:
+				if (Character.isLetterOrDigit(c)) {
+					// \b, \B, \A, \z, \Z, \G, \p, \Q, \k, \0, \c, \h, \v, \R and the back references
+					throw new IllegalArgumentException("escape \\" + c + " at " + pos);
+				}
+				return c;
+			}
+		}
+
+		private static CharClass digits() {
+			return CharClass.range('0', '9');
+		}
+
+		// as \s without UNICODE_CHARACTER_CLASS
+		private static CharClass whitespaces() {
+			CharClass charClass = CharClass.range('\t', '\r');
+			charClass.addRange(' ', ' ');
+			return charClass;
+		}
+
+		private static CharClass wordCharacters() {
+			CharClass charClass = CharClass.range('a', 'z');
+			charClass.addRange('A', 'Z');
+			charClass.addRange('0', '9');
+			charClass.addRange('_', '_');
+			return charClass;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package de.unihd.dbs.uima.annotator.heideltime.utilities;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+import de.unihd.dbs.uima.annotator.heideltime.resources.CompiledRule;
+import de.unihd.dbs.uima.annotator.heideltime.resources.Language;
+import de.unihd.dbs.uima.annotator.heideltime.resources.RuleManager;
+
+/**
+ * Checks the RuleAutomaton of each rule type against java.util.regex on a corpus, e.g., after the rules are edited:
+ * for every sentence and every compiled rule, the matches and the offsets of all their groups have to be those of
+ * successive Matcher.find() calls. The mismatches are printed, along with the time taken by either.
+ *
+ * Usage: RuleAutomatonCheck language file...
+ * The files are read as UTF-8 and cut into sentences after 。！？!?. and at the line ends.
+ *
+ */
+public class RuleAutomatonCheck {
+	private static final Pattern paSentenceEnd = Pattern.compile("(?<=[。！？!?.])|\n");
+
+	// the mismatches printed at most
+	private static final int MAX_PRINTED = 20;
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: RuleAutomatonCheck language file...");
+			return;
+		}
+
+		try {
+			RuleManager rulem = RuleManager.getInstance(Language.getLanguageFromString(args[0]));
+			ArrayList<String> sentences = readSentences(args);
+
+			CompiledRule[][] rulesPerType = {rulem.getDateRules(), rulem.getDurationRules(), rulem.getTimeRules(), rulem.getSetRules()};
+			RuleAutomaton[] automata = {rulem.getDateAutomaton(), rulem.getDurationAutomaton(), rulem.getTimeAutomaton(), rulem.getSetAutomaton()};
+
+			int rules = 0;
+			int compiled = 0;
+			int matches = 0;
+			int mismatches = 0;
+			long automatonNanos = 0;
+			long regexNanos = 0;
+			for (int type = 0; type < automata.length; type++) {
+				CompiledRule[] typeRules = rulesPerType[type];
+				RuleAutomaton automaton = automata[type];
+				rules += typeRules.length;
+				for (int i = 0; i < typeRules.length; i++) {
+					if (automaton.isCompiled(i)) {
+						compiled++;
+					}
+				}
+
+				for (String sentence : sentences) {
+					long start = System.nanoTime();
+					MatchResult[][] automatonMatches = automaton.findAll(sentence, null);
+					automatonNanos += System.nanoTime() - start;
+
+					for (int i = 0; i < typeRules.length; i++) {
+						if (automatonMatches[i] == null) {
+							continue;
+						}
+
+						start = System.nanoTime();
+						ArrayList<MatchResult> regexMatches = new ArrayList<MatchResult>();
+						for (MatchResult m : Toolbox.findMatches(typeRules[i].getPattern(), sentence)) {
+							regexMatches.add(m);
+						}
+						regexNanos += System.nanoTime() - start;
+
+						matches += regexMatches.size();
+						String expected = toString(regexMatches.toArray(new MatchResult[regexMatches.size()]));
+						String found = toString(automatonMatches[i]);
+						if (!expected.equals(found)) {
+							if (++mismatches <= MAX_PRINTED) {
+								System.out.println("MISMATCH of " + typeRules[i].getName() + " in: " + sentence);
+								System.out.println("  java.util.regex: " + expected);
+								System.out.println("  RuleAutomaton:   " + found);
+							}
+						}
+					}
+				}
+			}
+
+			System.out.println(sentences.size() + " sentences, " + compiled + " of " + rules + " rules compiled, "
+					+ matches + " matches, " + mismatches + " mismatches");
+			System.out.println("RuleAutomaton: " + automatonNanos / 1000000 + " ms, java.util.regex (compiled rules only): "
+					+ regexNanos / 1000000 + " ms");
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.err.println("RuleAutomatonCheck error!");
+		}
+	}
+
+	private static ArrayList<String> readSentences(String[] args) throws Exception {
+		ArrayList<String> sentences = new ArrayList<String>();
+		for (int i = 1; i < args.length; i++) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(args[i]), "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					for (String sentence : paSentenceEnd.split(line)) {
+						if (sentence.trim().length() > 0) {
+							sentences.add(sentence);
+						}
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return sentences;
+	}
+
+	// the offsets of the groups of each match
+	private static String toString(MatchResult[] matches) {
+		StringBuilder sb = new StringBuilder();
+		for (MatchResult m : matches) {
+			sb.append('[');
+			for (int group = 0; group <= m.groupCount(); group++) {
+				sb.append(group == 0 ? "" : " ").append(m.start(group)).append('-').append(m.end(group));
+			}
+			sb.append(']');
+		}
+		return sb.toString();
+	}
+}
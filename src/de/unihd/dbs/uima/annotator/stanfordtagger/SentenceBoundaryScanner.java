@@ -0,0 +1,129 @@
+package de.unihd.dbs.uima.annotator.stanfordtagger;
+
+/**
+ * Function:
+ *
+ * Splits a document into consecutive sentences in a single pass, i.e., the offsets [getBegin(), getEnd()) of one sentence
+ * after another, without regular expressions or substrings.
+ *
+ * (1) a run of 。！？!? ends a sentence, e.g., ！？ is one boundary;
+ * (2) a dot (. or ．) ends a sentence unless it is within a number, a url or an ellipsis, e.g., 3.5%, １２．６亿, www.sogou.com, ...,
+ * 	   or right after an initial or an abbreviation, e.g., J. or Mr.;
+ * (3) an ellipsis (… or ...) does not end a sentence by itself;
+ * (4) the closing quotes and brackets right after a boundary belong to the sentence it ends, e.g., 。” and ？）
+ *
+ * Usage:
+ * 	SentenceBoundaryScanner scanner = new SentenceBoundaryScanner(text);
+ * 	while(scanner.next()){ scanner.getBegin(), scanner.getEnd() }
+ *
+ * **/
+
+public class SentenceBoundaryScanner {
+
+	//always end a sentence
+	private static final String TERMINATORS = "。！？!?";
+	//end a sentence unless within a number, a url, an abbreviation or an ellipsis
+	private static final String DOTS = ".．";
+	//ASCII quotes are left out, as they may as well open the next sentence
+	private static final String CLOSERS = "”’」』）)》】〕";
+	//the usual ones followed by a dot in a Chinese news text, e.g., in English names and titles
+	private static final String [] ABBREVIATIONS = {"Mr", "Mrs", "Ms", "Dr", "Prof", "St", "Jr", "Sr",
+		"No", "Inc", "Ltd", "Co", "Corp", "vs", "etc", "Jan", "Feb", "Mar", "Apr", "Jun", "Jul", "Aug", "Sep", "Sept", "Oct", "Nov", "Dec"};
+
+	private final String text;
+	private int begin = 0;
+	private int end = 0;
+
+	public SentenceBoundaryScanner(String text){
+		this.text = text;
+	}
+
+	/**
+	 * advances to the next sentence, the last one ends at the end of the text even without a boundary
+	 * @return false if there is no further sentence
+	 * **/
+	public boolean next(){
+		int length = text.length();
+		if(end >= length){
+			return false;
+		}
+
+		begin = end;
+		for(int k=begin; k<length; k++){
+			if(isBoundary(k)){
+				k++;
+				//the rest of a run, e.g., ！？ or 。”
+				while(k<length && (isBoundary(k) || 0<=CLOSERS.indexOf(text.charAt(k)))){
+					k++;
+				}
+				end = k;
+				return true;
+			}
+		}
+
+		end = length;
+		return true;
+	}
+
+	public int getBegin(){
+		return begin;
+	}
+
+	public int getEnd(){
+		return end;
+	}
+
+	private boolean isBoundary(int k){
+		char c = text.charAt(k);
+		if(0 <= TERMINATORS.indexOf(c)){
+			return true;
+		}
+		if(DOTS.indexOf(c) < 0){
+			return false;
+		}
+
+		char prev = k>0 ? text.charAt(k-1) : ' ';
+		char next = k+1<text.length() ? text.charAt(k+1) : ' ';
+
+		//an ellipsis, a number, a url or an abbreviation such as U.S.A
+		if(0<=DOTS.indexOf(prev) || 0<=DOTS.indexOf(next) || isAlphanumeric(next)){
+			return false;
+		}
+
+		return !isAbbreviation(k);
+	}
+
+	/**
+	 * @return true if the dot at k follows an initial, e.g., J., or one of the ABBREVIATIONS
+	 * **/
+	private boolean isAbbreviation(int k){
+		int wordBegin = k;
+		while(wordBegin>0 && isLatinLetter(text.charAt(wordBegin-1))){
+			wordBegin--;
+		}
+
+		int wordLength = k-wordBegin;
+		if(0 == wordLength){
+			return false;
+		}
+		if(1==wordLength && Character.isUpperCase(text.charAt(wordBegin))){
+			return true;
+		}
+
+		for(String abbreviation: ABBREVIATIONS){
+			if(abbreviation.length()==wordLength && text.regionMatches(wordBegin, abbreviation, 0, wordLength)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//ASCII or full-width
+	private static boolean isLatinLetter(char c){
+		return ('a'<=c && c<='z') || ('A'<=c && c<='Z') || ('ａ'<=c && c<='ｚ') || ('Ａ'<=c && c<='Ｚ');
+	}
+
+	private static boolean isAlphanumeric(char c){
+		return isLatinLetter(c) || ('0'<=c && c<='9') || ('０'<=c && c<='９');
+	}
+}
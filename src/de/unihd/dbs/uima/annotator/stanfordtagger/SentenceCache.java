@@ -0,0 +1,132 @@
+package de.unihd.dbs.uima.annotator.stanfordtagger;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Function:
+ *
+ * The segmentation, pos and ner results of recently tagged sentences, e.g., bylines, "责任编辑：…" and source credits
+ * that recur across news documents, so that a recurring sentence is not tagged by the CRFs again.
+ *
+ * A result is relative to the sentence, i.e., it is replayed at the offsets of the sentence it is found for.
+ * The key is the exact sentence text (the segmentation depends on every character) plus the version of the models,
+ * thus the cache can be shared by all the StanfordCoreNLPWrapper instances of a process; the least-recently-used entry is evicted.
+ *
+ * **/
+
+public class SentenceCache implements SentenceCacheMBean {
+
+	private final int capacity;
+	private final LinkedHashMap<SentenceKey, CachedSentence> cacheMap;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+
+	/**
+	 * @param capacity the maximum number of cached sentences
+	 * **/
+	public SentenceCache(int capacity){
+		this.capacity = Math.max(1, capacity);
+		this.cacheMap = new LinkedHashMap<SentenceKey, CachedSentence>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<SentenceKey, CachedSentence> eldest) {
+				return size() > SentenceCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return the cached result of the given sentence, null if absent
+	 * **/
+	public CachedSentence get(String modelVersion, String text){
+		CachedSentence cachedSentence;
+		synchronized(cacheMap){
+			cachedSentence = cacheMap.get(new SentenceKey(modelVersion, text));
+		}
+
+		if(null == cachedSentence){
+			missCount.increment();
+		}else{
+			hitCount.increment();
+		}
+
+		return cachedSentence;
+	}
+
+	public void put(String modelVersion, String text, List<String> segList, String [] posToken, List<String> nerTagList){
+		CachedSentence cachedSentence = new CachedSentence(segList, posToken, nerTagList);
+		synchronized(cacheMap){
+			cacheMap.put(new SentenceKey(modelVersion, text), cachedSentence);
+		}
+	}
+
+	public int getCapacity(){
+		return capacity;
+	}
+
+	public int getSize(){
+		synchronized(cacheMap){
+			return cacheMap.size();
+		}
+	}
+
+	public long getHitCount(){
+		return hitCount.sum();
+	}
+
+	public long getMissCount(){
+		return missCount.sum();
+	}
+
+	public double getHitRate(){
+		long hits = hitCount.sum();
+		long lookups = hits+missCount.sum();
+		return 0==lookups ? 0 : (double)hits/lookups;
+	}
+
+	/**
+	 * the tagging result of a sentence, never modified once cached; posToken is null if it is tagged in the lazy pos mode
+	 * **/
+	public static class CachedSentence {
+		public final List<String> segList;
+		public final String [] posToken;
+		public final List<String> nerTagList;
+
+		CachedSentence(List<String> segList, String [] posToken, List<String> nerTagList){
+			this.segList = Collections.unmodifiableList(Arrays.asList(segList.toArray(new String[segList.size()])));
+			this.posToken = null==posToken ? null : posToken.clone();
+			this.nerTagList = Collections.unmodifiableList(Arrays.asList(nerTagList.toArray(new String[nerTagList.size()])));
+		}
+	}
+
+	private static class SentenceKey {
+		private final String modelVersion;
+		private final String text;
+
+		SentenceKey(String modelVersion, String text){
+			this.modelVersion = modelVersion;
+			this.text = text;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31*modelVersion.hashCode()+text.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof SentenceKey)){
+				return false;
+			}
+			SentenceKey other = (SentenceKey)obj;
+			return text.equals(other.text) && modelVersion.equals(other.modelVersion);
+		}
+	}
+}
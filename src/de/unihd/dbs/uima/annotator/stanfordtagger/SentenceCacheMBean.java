@@ -0,0 +1,17 @@
+package de.unihd.dbs.uima.annotator.stanfordtagger;
+
+/**
+ * The JMX view of a SentenceCache
+ * **/
+public interface SentenceCacheMBean {
+
+	public int getCapacity();
+
+	public int getSize();
+
+	public long getHitCount();
+
+	public long getMissCount();
+
+	public double getHitRate();
+}
@@ -4,7 +4,9 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
@@ -14,23 +16,29 @@ import java.util.regex.Pattern;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_component.JCasAnnotator_ImplBase;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.FSIterator;
 import org.apache.uima.jcas.JCas;
 
 
-import org.archive.util.tuple.Pair;
+import org.archive.util.metrics.PipelineMetrics;
+import org.archive.util.metrics.Stage;
+import org.archive.util.time.TimeBudget;
+import org.archive.util.time.TimeBudgetExceededException;
 
+import de.unihd.dbs.uima.annotator.heideltime.PartOfSpeechResolver;
 import de.unihd.dbs.uima.types.heideltime.Sentence;
 import de.unihd.dbs.uima.types.heideltime.Token;
 import edu.stanford.nlp.ie.crf.CRFClassifier;
 import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.Word;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.tagger.maxent.MaxentTagger;
 import edu.stanford.nlp.util.CoreMap;
 
-public class StanfordCoreNLPWrapper extends JCasAnnotator_ImplBase {
+public class StanfordCoreNLPWrapper extends JCasAnnotator_ImplBase implements PartOfSpeechResolver {
 	
 	private Class<?> component = this.getClass();
 	//used for splitting a document into sentences
@@ -56,21 +64,62 @@ public class StanfordCoreNLPWrapper extends JCasAnnotator_ImplBase {
 	//use pipeline or per calling
 	private boolean StanfordCoreNLP_PIP_USE = false;
 	
+	//checked between the sentences and between the components, null for no limit
+	private TimeBudget timeBudget = null;
+	//sentences longer than this are tagged in chunks, 0 for no limit
+	private int maxSentenceLength = 0;
+	//the per-document latencies of the components, null if not measured
+	private Stage segmentationStage = null;
+	private Stage posStage = null;
+	private Stage nerStage = null;
+	//accumulated over the sentences of the current document
+	private long segmentationNanos;
+	private long posNanos;
+	private long nerNanos;
+	
+	//whether each component tags all the sentences of a document before the next one starts
+	private boolean batchSentences = false;
+	
+	//whether the sentences are split by SentenceBoundaryScanner rather than by sPattern
+	private boolean boundaryScanner = false;
+	
+	//whether the pos tagging is left to resolve(), i.e., only the sentences that HeidelTime asks for are pos tagged
+	private boolean lazyPartOfSpeech = false;
+	//in the lazy pos mode, the segmented sentences of the current document by their begin, until resolve() tags them
+	private HashMap<Integer, SentenceTagging> lazySentenceMap = new HashMap<Integer, SentenceTagging>();
+	
+	//where a long sentence is preferably cut, i.e., right after a clause punctuation,
+	//otherwise right after a closing quote, an enumeration comma or a whitespace
+	private static final String CLAUSE_BREAKS = "，,；;：:";
+	private static final String WEAK_BREAKS = "”’」』）)》、";
+	//a long sentence without any of them is cut into fixed windows, each tagged together with
+	//the beginning of the next one as its right context, i.e., consecutive windows overlap by as many characters
+	private static final int WINDOW_OVERLAP = 16;
+	
+	//distinguishes the cached results of different models
+	private static final String MODEL_VERSION = StanfordModelRegistry.SEGMENTER_MODEL+"|"+StanfordModelRegistry.POS_MODEL+"|"+StanfordModelRegistry.NER_MODEL;
+	
+	//the results of recurring sentences, null for no caching
+	private SentenceCache sentenceCache = null;
+	
 	/**
 	 * StanfordCoreNLP 
 	 * not used due to inconsistent results of pos and ner, i.e., the untokenizable tokens are not deleted consistently
 	 * **/
 	public static Properties pipeStProps;
 	public static StanfordCoreNLP pipeStPipeline;
+	//whether the sentences are split by SentenceBoundaryScanner, i.e., ssplit.boundaryScanner = true in the properties
+	public static boolean pipeBoundaryScanner = false;
 	
 	/**
-	 * usage of Stanford Parser by calling necessary components, and self-splitting
+	 * usage of Stanford Parser by calling necessary components, and self-splitting;
+	 * the models are shared by all instances, except for the segmenter, which is one per thread, see StanfordModelRegistry
 	 * **/
-	private CRFClassifier stSegmenter;
+	private StanfordModelRegistry modelRegistry;
 	// Maximum Entropy Tagger from the Stanford POS Tagger
 	private MaxentTagger stPosTagger;
 	// CRF classifier for NER tagging
-	private CRFClassifier stNerTagger;
+	private CRFClassifier<CoreLabel> stNerTagger;
 	
 	/**
 	 * Tags of considered named entity
@@ -109,9 +158,80 @@ public class StanfordCoreNLPWrapper extends JCasAnnotator_ImplBase {
 		}
 	}
 	
+	/**
+	 * @param timeBudget checked by process_perComponent(), which throws TimeBudgetExceededException once it is used up; null for no limit
+	 * **/
+	public void setTimeBudget(TimeBudget timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+	
+	public TimeBudget getTimeBudget() {
+		return timeBudget;
+	}
+	
+	/**
+	 * @param maxSentenceLength sentences longer than this are tagged in chunks, which bounds the cost of the CRF segmenter and NER; 0 for no limit.
+	 * A chunk ends at a clause punctuation, a closing quote or a whitespace in its second half, otherwise it is a fixed window that overlaps the next one
+	 * **/
+	public void setMaxSentenceLength(int maxSentenceLength) {
+		this.maxSentenceLength = maxSentenceLength;
+	}
+	
+	/**
+	 * @param batchSentences true for running each component over all the sentences of a document before the next one, false for tagging one sentence after another
+	 * **/
+	public void setBatchSentences(boolean batchSentences) {
+		this.batchSentences = batchSentences;
+	}
+	
+	/**
+	 * @param boundaryScanner true for splitting the sentences by SentenceBoundaryScanner, which keeps decimals, urls, abbreviations and ellipses
+	 * 	and attaches closing quotes to their sentence; false for splitting at every terminator, incl. every dot
+	 * **/
+	public void setBoundaryScanner(boolean boundaryScanner) {
+		this.boundaryScanner = boundaryScanner;
+	}
+	
+	/**
+	 * @param lazyPartOfSpeech true for leaving the pos of the tokens empty until resolve() is called for their sentence,
+	 * 	e.g., by HeidelTime given this wrapper as its PartOfSpeechResolver; false for pos tagging every sentence
+	 * **/
+	public void setLazyPartOfSpeech(boolean lazyPartOfSpeech) {
+		this.lazyPartOfSpeech = lazyPartOfSpeech;
+	}
+	
+	public boolean isLazyPartOfSpeech() {
+		return lazyPartOfSpeech;
+	}
+	
+	/**
+	 * @param sentenceCache where the results of the sentences are looked up before tagging them, which can be shared by several wrappers; null for no caching
+	 * **/
+	public void setSentenceCache(SentenceCache sentenceCache) {
+		this.sentenceCache = sentenceCache;
+	}
+	
+	/**
+	 * @param metrics where process_perComponent() records the segmentation, pos and ner latencies of each document; null for none
+	 * **/
+	public void setMetrics(PipelineMetrics metrics) {
+		if(null == metrics){
+			segmentationStage = posStage = nerStage = null;
+		}else{
+			segmentationStage = metrics.getStage("segmentation");
+			posStage = metrics.getStage("pos");
+			nerStage = metrics.getStage("ner");
+		}
+	}
+	
 	public void initialize_Pip() {
 
 		pipeStProps = loadProperties("conf/StanfordCoreNLP-chinese.properties");
+		pipeBoundaryScanner = Boolean.parseBoolean(pipeStProps.getProperty("ssplit.boundaryScanner", "false"));
+		if(pipeBoundaryScanner){
+			//the pipeline is given one sentence at a time
+			pipeStProps.setProperty("ssplit.isOneSentence", "true");
+		}
 		pipeStPipeline = new StanfordCoreNLP(pipeStProps);
 		System.out.println("Finished corenlp setting!");
 		
@@ -119,26 +239,15 @@ public class StanfordCoreNLPWrapper extends JCasAnnotator_ImplBase {
 	
 	public void initialize_perComponent() {
 		try {
-			//1
-			Properties segProps = new Properties();
-			segProps.setProperty("segment", "edu.stanford.nlp.pipeline.ChineseSegmenterAnnotator");
-			segProps.setProperty("model", "edu/stanford/nlp/models/segmenter/chinese/ctb.gz");
-	        // Lines below are needed because CTBSegDocumentIteratorFactory accesses it
-			segProps.setProperty("sighanCorporaDict", "edu/stanford/nlp/models/segmenter/chinese");
-			segProps.setProperty("serDictionary", "edu/stanford/nlp/models/segmenter/chinese/dict-chris6.ser.gz");
-	        //props.setProperty("testFile", sampleData);
-			segProps.setProperty("inputEncoding", "UTF-8");
-			segProps.setProperty("sighanPostProcessing", "true");
-			segProps.setProperty("untokenizable", "allKeep");
-	        
-	        stSegmenter = new CRFClassifier(segProps);
-	        stSegmenter.loadClassifierNoExceptions("edu/stanford/nlp/models/segmenter/chinese/ctb.gz", segProps);
+			//loaded at the first call per process
+			modelRegistry = StanfordModelRegistry.getInstance();
+			//1 the segmenter is loaded by each thread at its first sentence, rather than here by the thread that creates the wrappers
 	        
 	        //2
-	        stPosTagger = new MaxentTagger("edu/stanford/nlp/models/pos-tagger/chinese-distsim/chinese-distsim.tagger");
+	        stPosTagger = modelRegistry.getPosTagger();
 
 	        //3
-	        stNerTagger = CRFClassifier.getClassifier("edu/stanford/nlp/models/ner/chinese.misc.distsim.crf.ser.gz");
+	        stNerTagger = modelRegistry.getNerTagger();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -179,18 +288,41 @@ public class StanfordCoreNLPWrapper extends JCasAnnotator_ImplBase {
 	public void process_Pip(JCas jcas) {
 		// grab the document text
 		String oriDoc = jcas.getDocumentText();
-		// create an empty Annotation just with the given text
-		Annotation stDoc = new Annotation(oriDoc);
-		// run all Annotators on this text
-		pipeStPipeline.annotate(stDoc);
+		
+		if(pipeBoundaryScanner){
+			//one sentence per Annotation, see initialize_Pip()
+			SentenceBoundaryScanner scanner = new SentenceBoundaryScanner(oriDoc);
+			while(scanner.next()){
+				Annotation stDoc = new Annotation(oriDoc.substring(scanner.getBegin(), scanner.getEnd()));
+				pipeStPipeline.annotate(stDoc);
+				annotatePip(jcas, stDoc, scanner.getBegin());
+			}
+		}else{
+			// create an empty Annotation just with the given text
+			Annotation stDoc = new Annotation(oriDoc);
+			// run all Annotators on this text
+			pipeStPipeline.annotate(stDoc);
+			annotatePip(jcas, stDoc, 0);
+		}
+	}
+	
+	/**
+	 * @param offset the offset of the annotated text in the document
+	 * **/
+	private void annotatePip(JCas jcas, Annotation stDoc, int offset) {
 		
 		//keep it let's see what is needed (i.e., the offsets) when output!
 		List<CoreMap> taggedSenList = stDoc.get(CoreAnnotations.SentencesAnnotation.class);
 		
-		Integer docOffset = 0; // a cursor of sorts to keep up with the position in the document text
+		Integer docOffset = offset; // a cursor of sorts to keep up with the position in the document text
 		
 		for(CoreMap taggedSen: taggedSenList) {
 			
+			//e.g., a whitespace-only sentence of SentenceBoundaryScanner, which has no end token
+			if(taggedSen.get(CoreAnnotations.TokensAnnotation.class).isEmpty()){
+				continue;
+			}
+			
 			// create a sentence object. gets added to index or discarded depending on configuration
 			Sentence uimaSentence = new Sentence(jcas);
 			uimaSentence.setBegin(docOffset);
@@ -208,8 +340,8 @@ public class StanfordCoreNLPWrapper extends JCasAnnotator_ImplBase {
 				lastTaggedToken = taggedToken;
 				
 				Token uimaToken = new Token(jcas);
-				uimaToken.setBegin(taggedToken.beginPosition());
-				uimaToken.setEnd(taggedToken.endPosition());
+				uimaToken.setBegin(offset+taggedToken.beginPosition());
+				uimaToken.setEnd(offset+taggedToken.endPosition());
 				
 				if(annotate_partofspeech){
 					uimaToken.setPos(taggedToken.get(CoreAnnotations.PartOfSpeechAnnotation.class));
@@ -230,20 +362,20 @@ public class StanfordCoreNLPWrapper extends JCasAnnotator_ImplBase {
 							createAnnotation(jcas,preNerTag,entityBegin,entityEnd);
 							
 							// begin new entity
-							entityBegin = (Integer) taggedToken.beginPosition();
-							entityEnd = (Integer) taggedToken.endPosition();
+							entityBegin = offset+taggedToken.beginPosition();
+							entityEnd = offset+taggedToken.endPosition();
 						} else if (!preNerTag.equals("O")) {
 							// change from entity to "other": entity finished
 							// push out finished entity
 							createAnnotation(jcas,preNerTag,entityBegin,entityEnd);
 						} else if (!curNerTag.equals("O")) {
 							// change from "other" to an entity: beginning of new entity
-							entityBegin = (Integer) taggedToken.beginPosition();
-							entityEnd = (Integer) taggedToken.endPosition();						
+							entityBegin = offset+taggedToken.beginPosition();
+							entityEnd = offset+taggedToken.endPosition();						
 						}
 					} else if (!curNerTag.equals("O")) {
 						// continuing entity: advance end position
-						entityEnd = (Integer) taggedToken.endPosition();
+						entityEnd = offset+taggedToken.endPosition();
 					}
 					
 					preNerTag = curNerTag;
@@ -255,77 +387,61 @@ public class StanfordCoreNLPWrapper extends JCasAnnotator_ImplBase {
 				if(0 == wordCount){
 					uimaSentence.setEnd(docOffset);
 				}else{
-					uimaSentence.setEnd(lastTaggedToken.endPosition());
+					uimaSentence.setEnd(offset+lastTaggedToken.endPosition());
 				}
 				
 				uimaSentence.addToIndexes();
 			}
 			
-			docOffset += lastTaggedToken.endPosition();
+			docOffset = offset+lastTaggedToken.endPosition();
 		}
 	}
 		
-	private ArrayList<Pair<String, String>> toNerTokenList(List<List<CoreLabel>> nerTokenList){
-		ArrayList<Pair<String, String>> nerWordTagList = new ArrayList<Pair<String,String>>();
-				
-		for (List<CoreLabel> sentence : nerTokenList) {
-            for (CoreLabel word : sentence) {
-            	//word - tag
-            	nerWordTagList.add(new Pair<String, String>(word.word(), word.get(CoreAnnotations.AnswerAnnotation.class)));
-            }
-        }
-		
-		return nerWordTagList;
-	}
-	//
+	//public static HashSet<String> nerTagsHashSet = new HashSet<String>();
+	
 	/**
-	 * keep the same number of tokens by adding "O" to ner tagged list
+	 * splitting the document, tagging segment, pos, ner respectively per sentence!
 	 * **/
-	private static int tagWindow = 5;
-	private ArrayList<String> toNerTagList(List<String> segList, ArrayList<Pair<String, String>> nerWordTagList){
-		
-		ArrayList<String> nerTagList = new ArrayList<String>();
+	public void process_perComponent(JCas jcas) {
+		// grab the document text
+		String oriDoc = jcas.getDocumentText();
 		
-		for(int i=0; i<segList.size(); i++){
-			
-			if(i<nerWordTagList.size() && segList.get(i).equals(nerWordTagList.get(i).first)){
-				nerTagList.add(nerWordTagList.get(i).second);
-				continue;
-			}
+		segmentationNanos = posNanos = nerNanos = 0;
+		lazySentenceMap.clear();
+		try {
+			ArrayList<SentenceTagging> sentenceList = splitSentences(oriDoc);
 			
-			boolean match = false;
-			for(int win=1; win<=tagWindow; win++){
-				int befPoint = i-win;
-				if(0<=befPoint && befPoint<nerWordTagList.size() && segList.get(i).equals(nerWordTagList.get(befPoint).first)){
-					nerTagList.add(nerWordTagList.get(befPoint).second);
-					match = true;
-					break;
-				}
-				
-				int aftPoint = i+win;
-				if(0<=aftPoint && aftPoint<nerWordTagList.size() && segList.get(i).equals(nerWordTagList.get(aftPoint).first)){
-					nerTagList.add(nerWordTagList.get(aftPoint).second);
-					match = true;
-					break;
+			if(batchSentences){
+				tagSentencesInBatch(jcas, oriDoc, sentenceList);
+			}else{
+				for(SentenceTagging sentence: sentenceList){
+					tagSentence(jcas, oriDoc, sentence);
 				}
 			}
-			
-			if(!match){
-				nerTagList.add("O");
+		} finally {
+			//an attempt over the time budget is recorded as well
+			if(null != segmentationStage){
+				segmentationStage.record(segmentationNanos);
+				posStage.record(posNanos);
+				nerStage.record(nerNanos);
 			}
-		}		
-		
-		return nerTagList;
-	}
+		}
 
-	//public static HashSet<String> nerTagsHashSet = new HashSet<String>();
+	}
 	
 	/**
-	 * splitting the document, tagging segment, pos, ner respectively per sentence!
+	 * @return the sentences of the document, where a sentence longer than maxSentenceLength is cut into consecutive chunks
 	 * **/
-	public void process_perComponent(JCas jcas) {
-		// grab the document text
-		String oriDoc = jcas.getDocumentText();
+	private ArrayList<SentenceTagging> splitSentences(String oriDoc){
+		ArrayList<SentenceTagging> sentenceList = new ArrayList<SentenceTagging>();
+		
+		if(boundaryScanner){
+			SentenceBoundaryScanner scanner = new SentenceBoundaryScanner(oriDoc);
+			while(scanner.next()){
+				addSentenceInChunks(sentenceList, oriDoc, scanner.getBegin(), scanner.getEnd());
+			}
+			return sentenceList;
+		}
 		
 		Matcher mat = sPattern.matcher(oriDoc);
 		
@@ -338,143 +454,8 @@ public class StanfordCoreNLPWrapper extends JCasAnnotator_ImplBase {
 			//end-offset of a sentence
 			int spEnd = mat.end();
 			
-			//current raw sentence
-			String newSentence = oriDoc.substring(senBegin, spEnd);
+			addSentenceInChunks(sentenceList, oriDoc, senBegin, spEnd);
 			
-			//sentence-leveling tagging
-			if(annotate_sentences){
-				// create a sentence object. gets added to index or discarded depending on configuration
-				Sentence uimaSentence = new Sentence(jcas);
-				uimaSentence.setBegin(senBegin);
-				uimaSentence.setEnd(spEnd);
-				
-				uimaSentence.addToIndexes();
-			}			
-			
-			//processing each sentence by calling each component
-			List<String> segList = null;
-			String [] posToken = null;
-			ArrayList<String> nerTagList = null;
-			
-			try {
-				//perform segmentation
-				segList = stSegmenter.segmentString(newSentence);				
-		        StringBuffer segBuffer = new StringBuffer();
-		        for(int i=0; i<segList.size(); i++){
-		        	String w = (String)segList.get(i);
-		        	segBuffer.append(w+" ");
-		        }		    
-		        //token string separated by blank
-		        String segmentedSen = segBuffer.toString().trim();
-		        
-		        //perform pos tagging given segmented sentence
-		        String posStr = stPosTagger.tagTokenizedString(new String(segmentedSen.getBytes(), "UTF-8"));
-		        posToken = posStr.split(" ");
-		        
-		        //perform ner tagging
-		        List<List<CoreLabel>> nerResult = stNerTagger.classify(segmentedSen);
-		        nerTagList = toNerTagList(segList, toNerTokenList(nerResult));
-		        
-			} catch (Exception e) {
-				// TODO: handle exception
-				System.err.println("Bug sentence!");
-				/*				
-				System.out.println("sen:\t"+newSentence);
-				System.out.println("---");
-				System.out.println("segList:\t"+segList.size()+":"+segList);
-				e.printStackTrace();
-				System.out.println("---");
-				*/
-				senBegin = spEnd;
-				continue;
-			}
-			
-	        //check the in consistence
-	        if(posToken.length >0 && segList.size() == posToken.length && posToken.length == nerTagList.size()){
-	        	
-				String preNerTag = "O";				
-				String lastToken = null;
-				
-				int offsetInSec = 0;
-				int entityBegin = senBegin;
-				int entityEnd = senBegin;
-				
-				// traversing the words in the current sentence				
-				for (int i=0; i<posToken.length; i++) {
-					
-					String curNerTag = nerTagList.get(i);
-					lastToken = segList.get(i);					
-					
-					int tokenBegin = senBegin+offsetInSec;
-					int tokenEnd = tokenBegin+lastToken.length();
-					offsetInSec += lastToken.length();
-										
-					Token uimaToken = new Token(jcas);
-					uimaToken.setBegin(tokenBegin);
-					uimaToken.setEnd(tokenEnd);
-					
-					if(annotate_partofspeech){
-						uimaToken.setPos(posToken[i].substring(posToken[i].lastIndexOf("#")+1));
-					}
-					
-					if(annotate_tokens){
-						uimaToken.addToIndexes();
-					}	
-					
-					if(annotate_ners){
-						
-						/*
-						if(!nerTagsHashSet.contains(curNerTag)){
-							nerTagsHashSet.add(curNerTag);
-						}
-						*/
-						
-						// this is the NER label of the token										
-						if (!curNerTag.equals(preNerTag)) {
-							if (!preNerTag.equals("O") && !curNerTag.equals("O")) {
-								// an entity directly next to an other entity
-								// push out finished entity
-								createAnnotation(jcas,preNerTag,entityBegin,entityEnd);
-								
-								// begin new entity
-								entityBegin = tokenBegin;
-								entityEnd = tokenEnd;
-								
-							} else if (!preNerTag.equals("O")) {
-								// change from entity to "other": entity finished
-								// push out finished entity
-								createAnnotation(jcas,preNerTag,entityBegin,entityEnd);
-							} else if (!curNerTag.equals("O")) {
-								// change from "other" to an entity: beginning of new entity
-								//entityBegin = (Integer) nerTaggedToken.beginPosition();
-								entityBegin = tokenBegin;
-								//entityEnd = (Integer) nerTaggedToken.endPosition();
-								entityEnd = tokenEnd;
-							}
-						} else if (!curNerTag.equals("O")) {
-							// continuing entity: advance end position
-							entityEnd = tokenEnd;
-						}
-						
-						preNerTag = curNerTag;
-						
-					}							
-				}			
-				
-	        }else {
-	        	
-				System.err.println("unequal size error!");
-				// >0 && segList.size() == posToken.length && posToken.length == nerWordList.size()
-				/*
-				System.out.println("posToken:\t"+posToken.length);				
-				System.out.println("segList:\t"+segList.size());
-				System.out.println(segList);
-				System.out.println("nerTagList:\t"+nerTagList.size());
-				System.out.println(nerTagList);
-				*/
-				
-			}
-	        
 			senBegin = spEnd;
 						
         }
@@ -484,138 +465,459 @@ public class StanfordCoreNLPWrapper extends JCasAnnotator_ImplBase {
 			
 			//System.out.println("last sentence!");
 			
-			int spEnd = oriDoc.length();
-			String lastSentence = oriDoc.substring(senBegin, spEnd);
+			addSentenceInChunks(sentenceList, oriDoc, senBegin, oriDoc.length());
+		}
+		
+		return sentenceList;
+	}
+	
+	/**
+	 * a sentence longer than maxSentenceLength is added as consecutive chunks, each of which is annotated as a sentence
+	 * **/
+	private void addSentenceInChunks(ArrayList<SentenceTagging> sentenceList, String oriDoc, int senBegin, int spEnd){
+		
+		while(maxSentenceLength > 0 && spEnd-senBegin > maxSentenceLength){
+			int chunkEnd = findChunkEnd(oriDoc, senBegin, senBegin+maxSentenceLength);
+			int contextEnd = chunkEnd;
 			
-			//sentence-leveling tagging
-			if(annotate_sentences){
-				// create a sentence object. gets added to index or discarded depending on configuration
-				Sentence uimaSentence = new Sentence(jcas);
-				uimaSentence.setBegin(senBegin);
-				uimaSentence.setEnd(spEnd);
+			if(chunkEnd < 0){
+				//a fixed window, which ends at the last token boundary before its nominal end,
+				//i.e., a token crossing the nominal end is left to the next window as a whole
+				contextEnd = Math.min(spEnd, senBegin+maxSentenceLength+Math.min(WINDOW_OVERLAP, maxSentenceLength/4));
+				SentenceTagging window = new SentenceTagging(oriDoc, senBegin, senBegin+maxSentenceLength, contextEnd);
+				window.end = senBegin+findTokenBoundary(window, maxSentenceLength);
 				
-				uimaSentence.addToIndexes();
-			}			
-			
-			//processing each sentence by calling each component
-			List<String> segList = null;
-			String [] posToken = null;
-			ArrayList<String> nerTagList = null;
+				sentenceList.add(window);
+				senBegin = window.end;
+				continue;
+			}
 			
-			try {
-				//perform segmentation
-				segList = stSegmenter.segmentString(lastSentence);				
-		        StringBuffer segBuffer = new StringBuffer();
-		        for(int i=0; i<segList.size(); i++){
-		        	String w = (String)segList.get(i);
-		        	segBuffer.append(w+" ");
-		        }		    
-		        //token string separated by blank
-		        String segmentedSen = segBuffer.toString().trim();
+			sentenceList.add(new SentenceTagging(oriDoc, senBegin, chunkEnd, contextEnd));
+			senBegin = chunkEnd;
+		}
+		
+		sentenceList.add(new SentenceTagging(oriDoc, senBegin, spEnd, spEnd));
+	}
+	
+	/**
+	 * @return the end of a chunk in the second half of [senBegin, maxEnd], preferably right after a clause punctuation; -1 if there is no break
+	 * **/
+	private static int findChunkEnd(String oriDoc, int senBegin, int maxEnd){
+		int weakEnd = -1;
+		
+		for(int k=maxEnd; k>senBegin+(maxEnd-senBegin)/2; k--){
+			char c = oriDoc.charAt(k-1);
+			if(0 <= CLAUSE_BREAKS.indexOf(c)){
+				return k;
+			}
+			if(weakEnd < 0 && (0 <= WEAK_BREAKS.indexOf(c) || Character.isWhitespace(c))){
+				weakEnd = k;
+			}
+		}
+		
+		return weakEnd;
+	}
+	
+	/**
+	 * segments a fixed window together with its right context, whose tokens are then kept for tagging the window
+	 * 
+	 * @return the end of the last token within the first maxOffset characters of the window, or maxOffset if there is none
+	 * **/
+	private int findTokenBoundary(SentenceTagging window, int maxOffset){
+		
+		checkTimeBudget();
+		if(null != timeBudget){
+			timeBudget.startSentence();
+		}
+		
+		try {
+			segment(window);
+		} catch (Exception e) {
+			//segmented again, and failed the same way, when the window is tagged
+			window.segList = null;
+			return maxOffset;
+		}
+		
+		int boundary = 0;
+		int offsetInSec = 0;
+		for(String token: window.segList){
+			offsetInSec = alignToken(window.text, token, offsetInSec)+token.length();
+			if(offsetInSec > maxOffset){
+				break;
+			}
+			boundary = offsetInSec;
+		}
+		
+		return boundary > 0 ? boundary : maxOffset;
+	}
+	
+	/**
+	 * segmentation, pos and ner tagging of a sentence, before the next sentence is tagged
+	 * **/
+	private void tagSentence(JCas jcas, String oriDoc, SentenceTagging sentence){
+		
+		checkTimeBudget();
+		if(null != timeBudget){
+			timeBudget.startSentence();
+		}
+		
+		addSentenceAnnotation(jcas, sentence);
+		
+		try {
+			if(!replayCachedSentence(sentence)){
+				//a fixed window is segmented when it is cut
+				if(null == sentence.segList){
+					segment(sentence);
+				}
+		        
+		        checkTimeBudget();
+		        
+		        if(!lazyPartOfSpeech){
+		        	posTag(sentence);
 		        
-		        //perform pos tagging given segmented sentence
-		        String posStr = stPosTagger.tagTokenizedString(new String(segmentedSen.getBytes(), "UTF-8"));
-		        posToken = posStr.split(" ");
+		        	checkTimeBudget();
+		        }
 		        
-		        //perform ner tagging
-		        List<List<CoreLabel>> nerResult = stNerTagger.classify(segmentedSen);
-		        nerTagList = toNerTagList(segList, toNerTokenList(nerResult));
+		        nerTag(sentence);
 		        
-			} catch (Exception e) {
-				// TODO: handle exception
-				System.err.println("Bug sentence!");
-				/*
-				System.out.println("sen:\t"+lastSentence);
-				System.out.println("---");
-				System.out.println("segList:\t"+segList.size()+":"+segList);
-				e.printStackTrace();
-				System.out.println("---");
-				*/
-				senBegin = spEnd;
+		        cacheSentence(sentence);
 			}
+		} catch (TimeBudgetExceededException e) {
+			throw e;
+		} catch (Exception e) {
+			// TODO: handle exception
+			System.err.println("Bug sentence!");
+			return;
+		}
+		
+		annotateTokens(jcas, sentence);
+	}
+	
+	/**
+	 * the batch mode, i.e., each component tags all the sentences of the document before the next component starts,
+	 * so that its model stays in the cache; the tokens and entities are annotated at last.
+	 * The results are the same as tagSentence() one sentence after another; the time budget of a sentence applies to each component call.
+	 * **/
+	private void tagSentencesInBatch(JCas jcas, String oriDoc, ArrayList<SentenceTagging> sentenceList){
+		
+		for(SentenceTagging sentence: sentenceList){
+			addSentenceAnnotation(jcas, sentence);
+		}
+		
+		//0 segmentation, 1 pos, 2 ner
+		for(int component=0; component<3; component++){
+			for(SentenceTagging sentence: sentenceList){
+				//a cached sentence only takes the lookup
+				if(sentence.failed || (component>0 && sentence.cached) || (1==component && lazyPartOfSpeech)){
+					continue;
+				}
+				
+				checkTimeBudget();
+				if(null != timeBudget){
+					timeBudget.startSentence();
+				}
+				
+				try {
+					if(0 == component){
+						if(!replayCachedSentence(sentence) && null == sentence.segList){
+							segment(sentence);
+						}
+					}else if(1 == component){
+						posTag(sentence);
+					}else{
+						nerTag(sentence);
+					}
+				} catch (TimeBudgetExceededException e) {
+					throw e;
+				} catch (Exception e) {
+					System.err.println("Bug sentence!");
+					sentence.failed = true;
+				}
+			}
+		}
+		
+		for(SentenceTagging sentence: sentenceList){
+			if(!sentence.failed){
+				if(!sentence.cached){
+					cacheSentence(sentence);
+				}
+				annotateTokens(jcas, sentence);
+			}
+		}
+	}
+	
+	//sentence-leveling tagging
+	private void addSentenceAnnotation(JCas jcas, SentenceTagging sentence){
+		if(annotate_sentences){
+			// create a sentence object. gets added to index or discarded depending on configuration
+			Sentence uimaSentence = new Sentence(jcas);
+			uimaSentence.setBegin(sentence.begin);
+			uimaSentence.setEnd(sentence.end);
+			
+			uimaSentence.addToIndexes();
+		}
+	}
+	
+	/**
+	 * @return true if the results of the sentence are found in the sentence cache, which are then set as its results
+	 * **/
+	private boolean replayCachedSentence(SentenceTagging sentence){
+		if(null == sentenceCache){
+			return false;
+		}
+		
+		SentenceCache.CachedSentence cachedSentence = sentenceCache.get(MODEL_VERSION, sentence.text);
+		//cached in the lazy pos mode, i.e., without pos
+		if(null == cachedSentence || (null == cachedSentence.posToken && !lazyPartOfSpeech)){
+			return false;
+		}
+		
+		//the results are relative to the sentence, i.e., annotateTokens() puts them at its offsets
+		sentence.segList = cachedSentence.segList;
+		sentence.posToken = cachedSentence.posToken;
+		sentence.nerTagList = cachedSentence.nerTagList;
+		sentence.cached = true;
+		
+		return true;
+	}
+	
+	private void cacheSentence(SentenceTagging sentence){
+		if(null != sentenceCache){
+			sentenceCache.put(MODEL_VERSION, sentence.text, sentence.segList, sentence.posToken, sentence.nerTagList);
+		}
+	}
+	
+	//perform segmentation
+	private void segment(SentenceTagging sentence){
+		long startNanos = System.nanoTime();
+		
+		//of the calling thread
+		sentence.segList = modelRegistry.getSegmenter().segmentString(sentence.text);
+        StringBuffer segBuffer = new StringBuffer();
+        for(int i=0; i<sentence.segList.size(); i++){
+        	String w = (String)sentence.segList.get(i);
+        	segBuffer.append(w+" ");
+        }
+        //token string separated by blank
+        sentence.segmentedSen = segBuffer.toString().trim();
+        
+        segmentationNanos += System.nanoTime()-startNanos;
+	}
+	
+	//perform pos tagging given segmented sentence
+	private void posTag(SentenceTagging sentence) throws UnsupportedEncodingException {
+		long startNanos = System.nanoTime();
+		
+        String posStr = stPosTagger.tagTokenizedString(new String(sentence.segmentedSen.getBytes(), "UTF-8"));
+        sentence.posToken = posStr.split(" ");
+        
+        posNanos += System.nanoTime()-startNanos;
+	}
+	
+	//perform ner tagging
+	private void nerTag(SentenceTagging sentence){
+		long startNanos = System.nanoTime();
+		
+        //the tokens of the segmenter are classified as they are, i.e., one tag per token
+        ArrayList<Word> wordList = new ArrayList<Word>(sentence.segList.size());
+        for(String w: sentence.segList){
+        	wordList.add(new Word(w));
+        }
+        
+        List<CoreLabel> nerResult = stNerTagger.classifySentence(wordList);
+        
+        ArrayList<String> nerTagList = new ArrayList<String>(nerResult.size());
+        for(CoreLabel word: nerResult){
+        	nerTagList.add(word.get(CoreAnnotations.AnswerAnnotation.class));
+        }
+        sentence.nerTagList = nerTagList;
+        
+        nerNanos += System.nanoTime()-startNanos;
+	}
+	
+	/**
+	 * annotates the tokens (with their pos tags) and the named entities of a tagged sentence
+	 * **/
+	private void annotateTokens(JCas jcas, SentenceTagging sentence){
+		
+		int senBegin = sentence.begin;
+		//the tokens in the right context of a window are not annotated
+		int senLength = sentence.end-sentence.begin;
+		List<String> segList = sentence.segList;
+		String [] posToken = sentence.posToken;
+		List<String> nerTagList = sentence.nerTagList;
+		
+        //check the in consistence, where posToken is null in the lazy pos mode
+        if(segList.size() >0 && (null == posToken || segList.size() == posToken.length) && segList.size() == nerTagList.size()){
+        	
+        	if(null == posToken){
+        		lazySentenceMap.put(senBegin, sentence);
+        	}
+        	
+			String preNerTag = "O";				
+			String lastToken = null;
+			
+			int offsetInSec = 0;
+			int entityBegin = senBegin;
+			int entityEnd = senBegin;
 			
-	        //check the in consistence
-	        if(posToken.length >0 && segList.size() == posToken.length && posToken.length == nerTagList.size()){
-	        	
-				String preNerTag = "O";				
-				String lastToken = null;
+			// traversing the words in the current sentence				
+			for (int i=0; i<segList.size(); i++) {
 				
-				int offsetInSec = 0;
-				int entityBegin = senBegin;
-				int entityEnd = senBegin;
+				String curNerTag = nerTagList.get(i);
+				lastToken = segList.get(i);					
 				
-				// traversing the words in the current sentence				
-				for (int i=0; i<posToken.length; i++) {
-					
-					String curNerTag = nerTagList.get(i);
-					lastToken = segList.get(i);					
-					
-					int tokenBegin = senBegin+offsetInSec;
-					int tokenEnd = tokenBegin+lastToken.length();
-					offsetInSec += lastToken.length();
-										
-					Token uimaToken = new Token(jcas);
-					uimaToken.setBegin(tokenBegin);
-					uimaToken.setEnd(tokenEnd);
+				int tokenOffset = alignToken(sentence.text, lastToken, offsetInSec);
+				if(tokenOffset >= senLength){
+					break;
+				}
+				
+				int tokenBegin = senBegin+tokenOffset;
+				int tokenEnd = senBegin+Math.min(senLength, tokenOffset+lastToken.length());
+				offsetInSec = tokenOffset+lastToken.length();
+									
+				Token uimaToken = new Token(jcas);
+				uimaToken.setBegin(tokenBegin);
+				uimaToken.setEnd(tokenEnd);
+				
+				if(annotate_partofspeech && null != posToken){
+					uimaToken.setPos(posToken[i].substring(posToken[i].lastIndexOf("#")+1));
+				}
+				
+				if(annotate_tokens){
+					uimaToken.addToIndexes();
+				}	
+				
+				if(annotate_ners){
 					
-					if(annotate_partofspeech){
-						uimaToken.setPos(posToken[i].substring(posToken[i].lastIndexOf("#")+1));
+					/*
+					if(!nerTagsHashSet.contains(curNerTag)){
+						nerTagsHashSet.add(curNerTag);
 					}
+					*/
 					
-					if(annotate_tokens){
-						uimaToken.addToIndexes();
-					}	
-					
-					if(annotate_ners){
-						// this is the NER label of the token										
-						if (!curNerTag.equals(preNerTag)) {
-							if (!preNerTag.equals("O") && !curNerTag.equals("O")) {
-								// an entity directly next to an other entity
-								// push out finished entity
-								createAnnotation(jcas,preNerTag,entityBegin,entityEnd);
-								
-								// begin new entity
-								entityBegin = tokenBegin;
-								entityEnd = tokenEnd;
-								
-							} else if (!preNerTag.equals("O")) {
-								// change from entity to "other": entity finished
-								// push out finished entity
-								createAnnotation(jcas,preNerTag,entityBegin,entityEnd);
-							} else if (!curNerTag.equals("O")) {
-								// change from "other" to an entity: beginning of new entity
-								//entityBegin = (Integer) nerTaggedToken.beginPosition();
-								entityBegin = tokenBegin;
-								//entityEnd = (Integer) nerTaggedToken.endPosition();
-								entityEnd = tokenEnd;
-							}
+					// this is the NER label of the token										
+					if (!curNerTag.equals(preNerTag)) {
+						if (!preNerTag.equals("O") && !curNerTag.equals("O")) {
+							// an entity directly next to an other entity
+							// push out finished entity
+							createAnnotation(jcas,preNerTag,entityBegin,entityEnd);
+							
+							// begin new entity
+							entityBegin = tokenBegin;
+							entityEnd = tokenEnd;
+							
+						} else if (!preNerTag.equals("O")) {
+							// change from entity to "other": entity finished
+							// push out finished entity
+							createAnnotation(jcas,preNerTag,entityBegin,entityEnd);
 						} else if (!curNerTag.equals("O")) {
-							// continuing entity: advance end position
+							// change from "other" to an entity: beginning of new entity
+							//entityBegin = (Integer) nerTaggedToken.beginPosition();
+							entityBegin = tokenBegin;
+							//entityEnd = (Integer) nerTaggedToken.endPosition();
 							entityEnd = tokenEnd;
 						}
-						
-						preNerTag = curNerTag;
-						
-					}							
-				}			
-				
-	        }else {
-	        	
-				System.err.println("unequal size error!");
-				// >0 && segList.size() == posToken.length && posToken.length == nerWordList.size()
-				/*
-				System.out.println("posToken:\t"+posToken.length);				
-				System.out.println("segList:\t"+segList.size());
-				System.out.println(segList);
-				System.out.println("nerTagList:\t"+nerTagList.size());
-				System.out.println(nerTagList);
-				*/
-				
+					} else if (!curNerTag.equals("O")) {
+						// continuing entity: advance end position
+						entityEnd = tokenEnd;
+					}
+					
+					preNerTag = curNerTag;
+					
+				}							
+			}			
+			
+			//an entity at the end of the chunk, e.g., before a window cut or the right context
+			if(annotate_ners && !preNerTag.equals("O")){
+				createAnnotation(jcas,preNerTag,entityBegin,entityEnd);
 			}
+			
+        }else {
+        	
+			System.err.println("unequal size error!");
+			// >0 && segList.size() == posToken.length && posToken.length == nerWordList.size()
+			/*
+			System.out.println("posToken:\t"+posToken.length);				
+			System.out.println("segList:\t"+segList.size());
+			System.out.println(segList);
+			System.out.println("nerTagList:\t"+nerTagList.size());
+			System.out.println(nerTagList);
+			*/
+			
 		}
+        
 
 	}
 	
+	/**
+	 * pos tags the tokens of the sentence in the lazy pos mode, the same as tagging it in process_perComponent(),
+	 * i.e., the whole segmented text is tagged, including the right context of a window and the tokens that could not be placed;
+	 * the time counts against the budget of the caller's sentence, and is not recorded as the pos stage, but as the caller's
+	 * **/
+	public void resolve(JCas jcas, Sentence sentence){
+		
+		//null if tagged already, either eagerly or by an earlier call
+		SentenceTagging segmentedSentence = lazySentenceMap.remove(sentence.getBegin());
+		if(null == segmentedSentence){
+			return;
+		}
+		
+		//the annotated tokens, i.e., the first ones of the segmented text
+		ArrayList<Token> tokenList = new ArrayList<Token>();
+		FSIterator iterToken = jcas.getAnnotationIndex(Token.type).subiterator(sentence);
+		while(iterToken.hasNext()){
+			tokenList.add((Token) iterToken.next());
+		}
+		
+		checkTimeBudget();
+		try {
+			//not set for a sentence replayed from the cache
+			if(null == segmentedSentence.segmentedSen){
+				StringBuffer segBuffer = new StringBuffer();
+				for(String w: segmentedSentence.segList){
+					segBuffer.append(w+" ");
+				}
+				segmentedSentence.segmentedSen = segBuffer.toString().trim();
+			}
+			
+			posTag(segmentedSentence);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.err.println("lazy pos tagging error!");
+			return;
+		}
+		checkTimeBudget();
+		
+		String [] posToken = segmentedSentence.posToken;
+		if(posToken.length == segmentedSentence.segList.size() && tokenList.size() <= posToken.length){
+			for(int i=0; i<tokenList.size(); i++){
+				tokenList.get(i).setPos(posToken[i].substring(posToken[i].lastIndexOf("#")+1));
+			}
+		}else{
+			System.err.println("unequal size error!");
+		}
+	}
+	
+	/**
+	 * @return the offset of the token in the text, i.e., right after the whitespace (dropped by the segmenter) at the given offset, if any
+	 * **/
+	private static int alignToken(String text, String token, int offset){
+		int k = offset;
+		while(k < text.length() && !text.startsWith(token, k) && Character.isWhitespace(text.charAt(k))){
+			k++;
+		}
+		
+		//otherwise as it is, e.g., a token changed by the segmenter
+		return text.startsWith(token, k) ? k : offset;
+	}
+	
+	private void checkTimeBudget(){
+		if(null != timeBudget){
+			timeBudget.check();
+		}
+	}
+	
 	public void process(JCas jcas) throws AnalysisEngineProcessException{
 		if(StanfordCoreNLP_PIP_USE){
 			process_Pip(jcas);
@@ -663,4 +965,31 @@ public class StanfordCoreNLPWrapper extends JCasAnnotator_ImplBase {
 		}		
 	}
 
+	
+	/**
+	 * a sentence [begin, end) of the document, with the results of the components
+	 * **/
+	private static class SentenceTagging {
+		final int begin;
+		//moved back to a token boundary for a fixed window, see findTokenBoundary()
+		int end;
+		//the raw text to be tagged, i.e., [begin, contextEnd), which includes the right context of a window
+		final String text;
+		
+		List<String> segList = null;
+		//token string separated by blank
+		String segmentedSen = null;
+		String [] posToken = null;
+		List<String> nerTagList = null;
+		//whether a component failed on it, i.e., it has no tokens
+		boolean failed = false;
+		//whether the results are taken from the sentence cache
+		boolean cached = false;
+		
+		SentenceTagging(String oriDoc, int begin, int end, int contextEnd){
+			this.begin = begin;
+			this.end = end;
+			this.text = oriDoc.substring(begin, contextEnd);
+		}
+	}
 }
@@ -0,0 +1,124 @@
+package de.unihd.dbs.uima.annotator.stanfordtagger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import edu.stanford.nlp.ie.crf.CRFClassifier;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.Word;
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+
+/**
+ * Function:
+ *
+ * The Stanford models of the per-component tagging for all StanfordCoreNLPWrapper instances,
+ * e.g., of the tagging threads or of HeidelTimeStandalone per document.
+ *
+ * The pos tagger and the ner tagger are loaded once per process and shared, i.e., CoreNLP itself shares a MaxentTagger
+ * and a ner CRFClassifier among its threads; each is warmed up by one sentence right after loading, before it is handed out,
+ * since a few parts are created at the first use.
+ * The segmenter is not thread-safe, e.g., its document reader and feature factory keep the state of the current text,
+ * and CoreNLP never shares it either; thus it is loaded once per thread that segments, which costs its memory per thread.
+ *
+ * **/
+
+public class StanfordModelRegistry {
+
+	public static final String SEGMENTER_MODEL = "edu/stanford/nlp/models/segmenter/chinese/ctb.gz";
+	public static final String POS_MODEL = "edu/stanford/nlp/models/pos-tagger/chinese-distsim/chinese-distsim.tagger";
+	public static final String NER_MODEL = "edu/stanford/nlp/models/ner/chinese.misc.distsim.crf.ser.gz";
+
+	//with the punctuations, colons, percents and dots that the segmenter's post-processing treats lazily
+	private static final String WARM_UP_SENTENCE = "新华社北京６月１２日电：今年前5个月增长了7.5%，好于预期。";
+	//the segmented tokens, separated by blank
+	private static final String WARM_UP_TOKENS = "新华社 北京 ６月 １２日 电";
+
+	private static StanfordModelRegistry instance = null;
+
+	//one per thread, see getSegmenter()
+	private final ThreadLocal<CRFClassifier<CoreLabel>> segmenter = new ThreadLocal<CRFClassifier<CoreLabel>>(){
+		@Override
+		protected CRFClassifier<CoreLabel> initialValue() {
+			return loadSegmenter();
+		}
+	};
+	private MaxentTagger posTagger = null;
+	private CRFClassifier<CoreLabel> nerTagger = null;
+
+	private StanfordModelRegistry(){}
+
+	public static synchronized StanfordModelRegistry getInstance(){
+		if(null == instance){
+			instance = new StanfordModelRegistry();
+		}
+		return instance;
+	}
+
+	/**
+	 * @return the ctb segmenter of the calling thread, loaded at its first call; thus it is to be asked for by the thread that segments,
+	 * rather than kept by an instance that may be created by another thread
+	 * **/
+	public CRFClassifier<CoreLabel> getSegmenter(){
+		return segmenter.get();
+	}
+
+	//one at a time, as the static patterns of the post-processing are created at the first use
+	private synchronized CRFClassifier<CoreLabel> loadSegmenter(){
+		long startMillis = System.currentTimeMillis();
+
+		Properties segProps = new Properties();
+		segProps.setProperty("segment", "edu.stanford.nlp.pipeline.ChineseSegmenterAnnotator");
+		segProps.setProperty("model", SEGMENTER_MODEL);
+		// Lines below are needed because CTBSegDocumentIteratorFactory accesses it
+		segProps.setProperty("sighanCorporaDict", "edu/stanford/nlp/models/segmenter/chinese");
+		segProps.setProperty("serDictionary", "edu/stanford/nlp/models/segmenter/chinese/dict-chris6.ser.gz");
+		segProps.setProperty("inputEncoding", "UTF-8");
+		segProps.setProperty("sighanPostProcessing", "true");
+		segProps.setProperty("untokenizable", "allKeep");
+
+		CRFClassifier<CoreLabel> loadedSegmenter = new CRFClassifier<CoreLabel>(segProps);
+		loadedSegmenter.loadClassifierNoExceptions(SEGMENTER_MODEL, segProps);
+		//creates the reader, the dictionaries and the static patterns
+		loadedSegmenter.segmentString(WARM_UP_SENTENCE);
+
+		System.out.println("Loaded segmenter in "+(System.currentTimeMillis()-startMillis)+" ms\tfor "+Thread.currentThread().getName());
+		return loadedSegmenter;
+	}
+
+	/**
+	 * @return the pos tagger, loaded at the first call
+	 * **/
+	public synchronized MaxentTagger getPosTagger(){
+		if(null == posTagger){
+			long startMillis = System.currentTimeMillis();
+
+			MaxentTagger loadedPosTagger = new MaxentTagger(POS_MODEL);
+			loadedPosTagger.tagTokenizedString(WARM_UP_TOKENS);
+
+			posTagger = loadedPosTagger;
+			System.out.println("Loaded pos tagger in "+(System.currentTimeMillis()-startMillis)+" ms");
+		}
+		return posTagger;
+	}
+
+	/**
+	 * @return the ner tagger, loaded at the first call
+	 * **/
+	public synchronized CRFClassifier<CoreLabel> getNerTagger() throws IOException, ClassNotFoundException {
+		if(null == nerTagger){
+			long startMillis = System.currentTimeMillis();
+
+			CRFClassifier<CoreLabel> loadedNerTagger = CRFClassifier.getClassifier(NER_MODEL);
+			ArrayList<Word> wordList = new ArrayList<Word>();
+			for(String w: WARM_UP_TOKENS.split(" ")){
+				wordList.add(new Word(w));
+			}
+			loadedNerTagger.classifySentence(wordList);
+
+			nerTagger = loadedNerTagger;
+			System.out.println("Loaded ner tagger in "+(System.currentTimeMillis()-startMillis)+" ms");
+		}
+		return nerTagger;
+	}
+}
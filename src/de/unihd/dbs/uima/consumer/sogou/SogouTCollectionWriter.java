@@ -2,8 +2,9 @@ package de.unihd.dbs.uima.consumer.sogou;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.DecimalFormat;
@@ -16,6 +17,8 @@ import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.ResourceProcessException;
 import org.apache.uima.util.ProcessTrace;
+import org.archive.util.metrics.PipelineMetrics;
+import org.archive.util.metrics.Stage;
 
 import de.unihd.dbs.heideltime.standalone.components.impl.NERTimeResultFormatter;
 import de.unihd.dbs.uima.types.heideltime.SourceDocInfo;
@@ -26,12 +29,26 @@ public class SogouTCollectionWriter extends CasConsumer_ImplBase {
 
 	private File outputDir;
 	BufferedWriter bf;
+	//the stream under bf, for syncing a finished file to the disk
+	private FileOutputStream outStream;
+	
+	//the documents that could not be tagged, in the non-tagged format, one file per output file
+	private BufferedWriter quarantineWriter = null;
+	private FileOutputStream quarantineStream;
  
 	private int docCount;
 	
 	private static final int docPerFile = 5000;
 	private static final DecimalFormat df = new DecimalFormat("00000000");
 	
+	//e.g., SogouCA_TemTagged_part0of4_, so that the files of different partitions never collide
+	private String outFilePrefix = "SogouCA_TemTagged_";
+	private String quarantinePrefix = "SogouCA_TemQuarantined_";
+	
+	//the per-document latencies of generating the tagged text and of writing a document, null if not measured
+	private Stage formattingStage = null;
+	private Stage writeStage = null;
+	
 	/**
 	 * initialize
 	 */
@@ -46,13 +63,30 @@ public class SogouTCollectionWriter extends CasConsumer_ImplBase {
 	}
 	
 	public void initialize(String dir) throws ResourceInitializationException {
+		initialize(dir, null, 0);
+	}
+	
+	/**
+	 * @param partitionLabel the label of the partition of the input files, which is added to the names of the output files; null for no partition
+	 * @param finishedDocNum the number of documents in the finished output files of a previous run, a multiple of docPerFile, i.e., the next file to be written; 0 for a new run
+	 * **/
+	public void initialize(String dir, String partitionLabel, int finishedDocNum) throws ResourceInitializationException {
 	    
-		docCount = 0;
+		outFilePrefix = getFilePrefix("TemTagged", partitionLabel);
+		quarantinePrefix = getFilePrefix("TemQuarantined", partitionLabel);
+		
+		if(0 != finishedDocNum % docPerFile){
+			throw new ResourceInitializationException(new IllegalArgumentException("Not a file boundary: "+finishedDocNum));
+		}
+		
+		docCount = finishedDocNum;
 		outputDir = new File(dir);
 		if (!outputDir.exists()) {
 			outputDir.mkdirs();
 		} 
 		
+		//left by the previous run otherwise
+		getQuarantineFile().delete();
 	}
 
 	@Override
@@ -71,22 +105,40 @@ public class SogouTCollectionWriter extends CasConsumer_ImplBase {
 	}
 	
 	public void printDocuments(JCas jcas){
+		printDocuments(jcas, null);
+	}
+	
+	/**
+	 * @param metrics where printDocuments() records the formatting and write latencies of each document; null for none
+	 * **/
+	public void setMetrics(PipelineMetrics metrics){
+		if(null == metrics){
+			formattingStage = writeStage = null;
+		}else{
+			formattingStage = metrics.getStage("formatting");
+			writeStage = metrics.getStage("write");
+		}
+	}
+	
+	/**
+	 * @param taggedText the tagged text copied from the canonical document, or null if it is to be generated from the given jcas
+	 * @return the tagged text being written
+	 * **/
+	public String printDocuments(JCas jcas, String taggedText){
+		
+		long startNanos = System.nanoTime();
+		long formattingNanos = 0;
 		
-		if(0 == docCount % docPerFile){			
+		if(null == bf){			
 			try {
-				if(docCount > 0){
-					bf.flush();
-					bf.close();
-					bf=null;
-				}
-				
 				int k = docCount/docPerFile;
 				String suffix = df.format(k);
 				
-				String outFileName = "SogouCA_TemTagged_"+suffix+".xml";
+				String outFileName = outFilePrefix+suffix+".xml";
 				
 				File outFile = new File(outputDir, outFileName);
-				bf = new BufferedWriter(new FileWriter(outFile));
+				outStream = new FileOutputStream(outFile);
+				bf = new BufferedWriter(new OutputStreamWriter(outStream));
 			} catch (Exception e) {
 				// TODO: handle exception
 				e.printStackTrace();
@@ -115,31 +167,155 @@ public class SogouTCollectionWriter extends CasConsumer_ImplBase {
 				bf.newLine();
 				bf.write("<tag name=\"source-encoding\">UTF-8</tag>");
 				bf.newLine();
+				if(null != docInfo.getCanonical()){
+					bf.write("<tag name=\"canonical\">"+docInfo.getCanonical()+"</tag>");
+					bf.newLine();
+				}
 				bf.write("</meta-info>");
 				bf.newLine();				
 		    }
 			
-		    //tagged text		    
-			bf.write(NERTimeResultFormatter.temFormat(jcas));			
+		    //tagged text
+		    if(null == taggedText){
+		    	long formattingStartNanos = System.nanoTime();
+		    	taggedText = NERTimeResultFormatter.temFormat(jcas);
+		    	formattingNanos = System.nanoTime()-formattingStartNanos;
+		    	
+		    	if(null != formattingStage){
+		    		formattingStage.record(formattingNanos);
+		    	}
+		    }
+			bf.write(taggedText);			
 			bf.write("</doc>");
 			bf.newLine();			
 		    
 		    docCount++;
 		    
 		    //System.out.println("in:\t"+docCount);
+		    
+		    if(0 == docCount % docPerFile){
+		    	closeFile();
+		    	getQuarantineFile().delete();
+		    }
 		      
 		} catch (Exception e) {
 			e.printStackTrace();
-		}		
+		}
+		
+		if(null != writeStage){
+			writeStage.record(System.nanoTime()-startNanos-formattingNanos);
+		}
+		
+		return taggedText;
+	}
+	
+	/**
+	 * prints a document that could not be tagged, e.g., over the time budget, in the non-tagged format, i.e., it can be tagged again later;
+	 * the quarantine file goes along with the current output file, e.g., SogouCA_TemQuarantined_00000003.xml with SogouCA_TemTagged_00000003.xml
+	 * **/
+	public void printQuarantined(JCas jcas){
+		
+		try {
+			if(null == quarantineWriter){
+				quarantineStream = new FileOutputStream(getQuarantineFile());
+				quarantineWriter = new BufferedWriter(new OutputStreamWriter(quarantineStream, "utf-8"));
+			}
+			
+		    FSIterator it = jcas.getAnnotationIndex(SourceDocInfo.type).iterator();
+		    
+		    //meta-info
+		    if (it.hasNext()) {
+		    	SourceDocInfo docInfo = (SourceDocInfo) it.next();
+		    	
+		    	quarantineWriter.write("<doc id=\""+docInfo.getId()+"\">");
+		    	quarantineWriter.newLine();
+		    	quarantineWriter.write("<meta-info>");
+		    	quarantineWriter.newLine();
+		    	quarantineWriter.write("<tag name=\"host\">"+docInfo.getHost()+"</tag>");
+		    	quarantineWriter.newLine();
+		    	quarantineWriter.write("<tag name=\"date\">"+docInfo.getDate()+"</tag>");
+		    	quarantineWriter.newLine();
+		    	quarantineWriter.write("<tag name=\"url\">"+docInfo.getUri()+"</tag>");
+		    	quarantineWriter.newLine();
+		    	quarantineWriter.write("<tag name=\"title\">"+docInfo.getTitle()+"</tag>");
+		    	quarantineWriter.newLine();
+		    	quarantineWriter.write("<tag name=\"source-encoding\">UTF-8</tag>");
+		    	quarantineWriter.newLine();
+		    	if(null != docInfo.getCanonical()){
+		    		quarantineWriter.write("<tag name=\"canonical\">"+docInfo.getCanonical()+"</tag>");
+		    		quarantineWriter.newLine();
+		    	}
+		    	quarantineWriter.write("</meta-info>");
+		    	quarantineWriter.newLine();
+		    }
+		    
+		    quarantineWriter.write("<text>");
+		    quarantineWriter.newLine();
+		    quarantineWriter.write(jcas.getDocumentText());
+		    quarantineWriter.newLine();
+		    quarantineWriter.write("</text>");
+		    quarantineWriter.newLine();
+		    quarantineWriter.write("</doc>");
+		    quarantineWriter.newLine();
+		    
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private File getQuarantineFile(){
+		return new File(outputDir, quarantinePrefix+df.format(docCount/docPerFile)+".xml");
+	}
+	
+	/**
+	 * @return whether the last printed document filled the current output file, i.e., the file is closed and synced to the disk
+	 * **/
+	public boolean isFileFinished(){
+		return docCount > 0 && 0 == docCount % docPerFile && null == bf;
+	}
+	
+	/**
+	 * @return the number of documents printed, including those of a previous run if resumed
+	 * **/
+	public int getDocCount(){
+		return docCount;
+	}
+	
+	/**
+	 * @return the file recording the progress of tagging, stored along with the output files of the given partition
+	 * **/
+	public static File getCheckpointFile(String dir, String partitionLabel){
+		return new File(dir, getFilePrefix("TemTagged", partitionLabel)+"checkpoint.properties");
+	}
+	
+	//e.g., SogouCA_TemTagged_ or SogouCA_TemTagged_part0of4_
+	private static String getFilePrefix(String kind, String partitionLabel){
+		return null==partitionLabel ? "SogouCA_"+kind+"_" : "SogouCA_"+kind+"_"+partitionLabel+"_";
+	}
+	
+	//flush, sync and close the current output file, and its quarantine file if any
+	private void closeFile() throws IOException {
+		if(null != bf){
+			bf.flush();
+			outStream.getFD().sync();
+			bf.close();
+			bf = null;
+			outStream = null;
+		}
+		
+		if(null != quarantineWriter){
+			quarantineWriter.flush();
+			quarantineStream.getFD().sync();
+			quarantineWriter.close();
+			quarantineWriter = null;
+			quarantineStream = null;
+		}
 	}
 	
 	@Override
 	public void collectionProcessComplete(ProcessTrace arg0) throws IOException {
 		try {
-			if(null != bf){
-				bf.flush();
-				bf.close();
-			}
+			closeFile();
 		} catch (Exception e) {
 			// TODO: handle exception
 			e.printStackTrace();
@@ -0,0 +1,28 @@
+package de.unihd.dbs.uima.reader.sogou;
+
+/**
+ * The position of a document in the input collection, i.e., the name of the file and the index of the document within it (from 0)
+ * **/
+public class DocPosition {
+
+	private String fileName;
+	private int docIndex;
+
+	public DocPosition(String fileName, int docIndex){
+		this.fileName = fileName;
+		this.docIndex = docIndex;
+	}
+
+	public String getFileName(){
+		return fileName;
+	}
+
+	public int getDocIndex(){
+		return docIndex;
+	}
+
+	@Override
+	public String toString(){
+		return fileName+"#"+docIndex;
+	}
+}
@@ -0,0 +1,114 @@
+package de.unihd.dbs.uima.reader.sogou;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.archive.util.io.IOText;
+
+/**
+ * Function:
+ *
+ * Selects a slice of the input files, so that independent processes (on one or more hosts) can tag disjoint slices without coordination.
+ * A slice is given as one of
+ * (1)	i/n			e.g., 0/4, every n-th file from the i-th one on, in the order of the sorted file names, i.e., each file belongs to exactly one of the n partitions,
+ * 				and the partitions differ in size by one file at most;
+ * (2)	@listFile	the files whose names are listed in the given file, one per line;
+ * (3)	glob		e.g., SogouCA_TemNoTag_0000001*.xml, the files whose names match the given pattern.
+ *
+ * Only the file names count, i.e., the assignment does not depend on the host, as long as each host sees the same input files.
+ *
+ * **/
+
+public class FilePartition {
+
+	//for i/n
+	private int index = -1;
+	private int count;
+	//for @listFile
+	private HashSet<String> nameSet;
+	//for glob
+	private PathMatcher matcher;
+
+	//distinguishes the output of this slice from the others
+	private String label;
+
+	private FilePartition(){}
+
+	public static FilePartition parse(String spec) throws IOException {
+
+		FilePartition partition = new FilePartition();
+
+		int slash = spec.indexOf('/');
+
+		if(spec.startsWith("@")){
+
+			ArrayList<String> nameList = new ArrayList<String>();
+			for(String line: IOText.getLinesAsAList(spec.substring(1), "utf-8")){
+				nameList.add(new File(line.trim()).getName());
+			}
+			Collections.sort(nameList);
+
+			partition.nameSet = new HashSet<String>(nameList);
+			partition.label = "list"+Integer.toHexString(nameList.hashCode());
+
+		}else if(slash>0 && spec.substring(0, slash).matches("-?[0-9]+") && spec.substring(slash+1).matches("-?[0-9]+")){
+
+			int index = Integer.parseInt(spec.substring(0, slash));
+			int count = Integer.parseInt(spec.substring(slash+1));
+
+			if(index<0 || count<=0 || index>=count){
+				throw new IllegalArgumentException("Illegal partition, 0 <= i < n is required: "+spec);
+			}
+
+			partition.index = index;
+			partition.count = count;
+
+			partition.label = "part"+partition.index+"of"+partition.count;
+
+		}else{
+
+			partition.matcher = FileSystems.getDefault().getPathMatcher("glob:"+spec);
+			partition.label = "glob"+Integer.toHexString(spec.hashCode());
+		}
+
+		return partition;
+	}
+
+	/**
+	 * @param sortedFiles all the input files, sorted by name
+	 * @return the files of this slice, in the given order
+	 * **/
+	public ArrayList<File> select(List<File> sortedFiles){
+
+		ArrayList<File> fileList = new ArrayList<File>();
+		for(int i=0; i<sortedFiles.size(); i++){
+			File file = sortedFiles.get(i);
+			//by position rather than by a hash of the name, whose buckets are very uneven for names like SogouCA_TemNoTag_%08d.xml
+			if(index>=0 ? i%count == index : accept(file.getName())){
+				fileList.add(file);
+			}
+		}
+
+		return fileList;
+	}
+
+	private boolean accept(String name){
+
+		if(null != nameSet){
+			return nameSet.contains(name);
+		}else{
+			return matcher.matches(Paths.get(name));
+		}
+	}
+
+	public String getLabel(){
+		return label;
+	}
+}
@@ -0,0 +1,46 @@
+package de.unihd.dbs.uima.reader.sogou;
+
+import java.util.TreeMap;
+
+/**
+ * One document of a pre-processed (non-tagged) file, i.e.,
+ * <doc id=***>
+ * <meta-info><tag name="***">***</tag>...</meta-info>
+ * <text>***</text>
+ * </doc>
+ * **/
+public class SogouDoc {
+	//meta-info, including the id
+	private TreeMap<String, String> metaMap = new TreeMap<String, String>();
+	private String text;
+	//where the document is read from
+	private DocPosition position;
+
+	public String getId(){
+		return metaMap.get("id");
+	}
+
+	public String getMeta(String name){
+		return metaMap.get(name);
+	}
+
+	public void putMeta(String name, String value){
+		metaMap.put(name, value);
+	}
+
+	public String getText(){
+		return text;
+	}
+
+	public void setText(String text){
+		this.text = text;
+	}
+
+	public DocPosition getPosition(){
+		return position;
+	}
+
+	public void setPosition(DocPosition position){
+		this.position = position;
+	}
+}
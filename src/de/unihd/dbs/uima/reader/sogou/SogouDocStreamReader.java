@@ -0,0 +1,99 @@
+package de.unihd.dbs.uima.reader.sogou;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.archive.util.io.CodePointFilter;
+import org.archive.util.io.FilteringReader;
+
+/**
+ * Function:
+ *
+ * Pulls the documents of a pre-processed file one by one, i.e., only the current document is kept in memory,
+ * and the first document is available without parsing the whole file.
+ *
+ * As loading the file line by line did, the lines are joined, the noisy characters are filtered and '&' is escaped,
+ * and the <doc> elements are enclosed by <add>.
+ *
+ * **/
+
+public class SogouDocStreamReader {
+
+	private FilteringReader reader;
+	private XMLStreamReader xmlReader;
+
+	public SogouDocStreamReader(File file) throws IOException, XMLStreamException {
+
+		reader = new FilteringReader(new InputStreamReader(new FileInputStream(file), "utf-8"),
+				CodePointFilter.newNoisyCharacterFilter().withoutLineBreaks(), "<add>", "</add>");
+
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+
+		xmlReader = factory.createXMLStreamReader(reader);
+	}
+
+	/**
+	 * @return the next document, or null if the file is exhausted
+	 * **/
+	public SogouDoc next() throws XMLStreamException {
+
+		while(xmlReader.hasNext()){
+			if(XMLStreamConstants.START_ELEMENT==xmlReader.next() && "doc".equals(xmlReader.getLocalName())){
+				return readDoc();
+			}
+		}
+
+		return null;
+	}
+
+	//the cursor is at <doc>
+	private SogouDoc readDoc() throws XMLStreamException {
+
+		SogouDoc doc = new SogouDoc();
+		doc.putMeta("id", xmlReader.getAttributeValue(null, "id"));
+
+		int depth = 1;
+		while(depth > 0){
+
+			int event = xmlReader.next();
+
+			if(XMLStreamConstants.START_ELEMENT == event){
+
+				String name = xmlReader.getLocalName();
+
+				if("tag".equals(name) && 2==depth){
+					//a tag of meta-info, the cursor moves to its end
+					String tagName = xmlReader.getAttributeValue(null, "name");
+					doc.putMeta(tagName, xmlReader.getElementText());
+				}else if("text".equals(name) && 1==depth && null==doc.getText()){
+					doc.setText(xmlReader.getElementText());
+				}else{
+					depth++;
+				}
+
+			}else if(XMLStreamConstants.END_ELEMENT == event){
+				depth--;
+			}
+		}
+
+		return doc;
+	}
+
+	public void close() {
+		try {
+			xmlReader.close();
+			reader.close();
+		} catch (Exception e) {
+			// TODO: handle exception
+			e.printStackTrace();
+		}
+	}
+}
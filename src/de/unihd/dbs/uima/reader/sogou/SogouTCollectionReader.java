@@ -1,16 +1,14 @@
 package de.unihd.dbs.uima.reader.sogou;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
-import java.util.List;
-import java.util.TreeMap;
-import java.util.regex.Pattern;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
@@ -21,10 +19,6 @@ import org.apache.uima.resource.ResourceConfigurationException;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.FileUtils;
 import org.apache.uima.util.Progress;
-import org.archive.util.io.IOText;
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.input.SAXBuilder;
 
 import de.unihd.dbs.heideltime.standalone.components.JCasFactory;
 import de.unihd.dbs.uima.types.heideltime.Dct;
@@ -39,13 +33,27 @@ public class SogouTCollectionReader extends CollectionReader_ImplBase {
 	 */
 	private ArrayList<File> fileSetList;
 
-	private List docListOfCurrentFile = null;
 	//cursor w.r.t. the list of big-files
 	private int fileCursorOfDirecory;
-	//cursor w.r.t. the list of documents in a big-file
+	//the documents of the current big-file, pulled one by one
+	private SogouDocStreamReader docStreamOfCurrentFile = null;
+	private String nameOfCurrentFile = null;
 	private int docCursorOfCurrentFile;
-	//total number of documents in a file
-	private int docNumOfCurrentFile;
+	//for resuming, the number of documents of the current big-file that have been processed before
+	private int docsToSkip = 0;
+	//the document to be returned by the next call of getNext()
+	private SogouDoc nextDoc = null;
+	//the position of the document returned by the last call of getNext()
+	private DocPosition lastPosition = null;
+	
+	//for prefetching, the documents read and parsed ahead by a background thread
+	private BlockingQueue<SogouDoc> prefetchQueue = null;
+	private Thread prefetchThread = null;
+	private boolean prefetchFinished = false;
+	//the failure that ended the prefetching, rethrown by hasNext() once the documents read before it are consumed
+	private volatile Throwable prefetchFailure = null;
+	//marks the end of the collection in the queue
+	private static final SogouDoc END_OF_COLLECTION = new SogouDoc();
 	
 	private static SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy.MM.dd'T'HH:mm");
 	
@@ -62,23 +70,20 @@ public class SogouTCollectionReader extends CollectionReader_ImplBase {
 		}
 
 		// get list of big-files (without sub-directories) in the specified directory
-		fileSetList = new ArrayList<File>();
-		File[] files = directory.listFiles();
-		for (int i = 0; i < files.length; i++) {
-			if (!files[i].isDirectory()) {
-				fileSetList.add(files[i]);
-			}
-		}
-		
-		//load the documents of the first file
-		if(fileCursorOfDirecory < fileSetList.size()){
-			docListOfCurrentFile = loadDocuments();
-			docCursorOfCurrentFile = 0;
-			docNumOfCurrentFile = docListOfCurrentFile.size();
-		}		
+		fileSetList = listFiles(directory, null);
 	}
 	
 	public void initialize(String dir) throws ResourceInitializationException {
+		initialize(dir, 0, null, null);
+	}
+	
+	/**
+	 * @param prefetchSize the maximum number of documents read and parsed ahead by a background thread,
+	 * i.e., the next file is loaded while the documents of the current one are being processed; 0 for no prefetching
+	 * @param partition the slice of the files to be read, null for all
+	 * @param resumeAfter the position of the last processed document of a previous run, i.e., reading starts right after it; null for reading from the beginning
+	 * **/
+	public void initialize(String dir, int prefetchSize, FilePartition partition, DocPosition resumeAfter) throws ResourceInitializationException {
 		
 		File directory = new File(dir);
 		fileCursorOfDirecory = 0;
@@ -90,20 +95,72 @@ public class SogouTCollectionReader extends CollectionReader_ImplBase {
 		}
 
 		// get list of big-files (without sub-directories) in the specified directory
-		fileSetList = new ArrayList<File>();
+		fileSetList = listFiles(directory, partition);
+		
+		if(null != resumeAfter){
+			//the files are sorted by name, i.e., the files before the given one are finished
+			while(fileCursorOfDirecory < fileSetList.size()
+					&& fileSetList.get(fileCursorOfDirecory).getName().compareTo(resumeAfter.getFileName()) < 0){
+				fileCursorOfDirecory++;
+			}
+			
+			if(fileCursorOfDirecory < fileSetList.size()
+					&& fileSetList.get(fileCursorOfDirecory).getName().equals(resumeAfter.getFileName())){
+				docsToSkip = resumeAfter.getDocIndex()+1;
+			}
+		}
+		
+		if(prefetchSize > 0){
+			prefetchQueue = new ArrayBlockingQueue<SogouDoc>(prefetchSize);
+			
+			prefetchThread = new Thread(new Runnable() {
+				public void run() {
+					boolean closed = false;
+					try {
+						SogouDoc doc;
+						while(null != (doc=readNextDoc())){
+							prefetchQueue.put(doc);
+						}
+					} catch (InterruptedException e) {
+						//closed before the end of the collection
+						closed = true;
+					} catch (Throwable t) {
+						prefetchFailure = t;
+					} finally {
+						//otherwise hasNext() would wait forever
+						if(!closed){
+							try {
+								prefetchQueue.put(END_OF_COLLECTION);
+							} catch (InterruptedException e) {
+								//closed
+							}
+						}
+					}
+				}
+			}, "SogouPrefetcher");
+			
+			prefetchThread.setDaemon(true);
+			prefetchThread.start();
+		}
+	}
+
+	/**
+	 * @return the files (without sub-directories) in the given directory sorted by name, i.e., in the same order on every host
+	 * **/
+	private static ArrayList<File> listFiles(File directory, FilePartition partition){
+		
+		ArrayList<File> fileList = new ArrayList<File>();
 		File[] files = directory.listFiles();
 		for (int i = 0; i < files.length; i++) {
 			if (!files[i].isDirectory()) {
-				fileSetList.add(files[i]);
+				fileList.add(files[i]);
 			}
 		}
 		
-		//load the documents of the first file
-		if(fileCursorOfDirecory < fileSetList.size()){
-			docListOfCurrentFile = loadDocuments();
-			docCursorOfCurrentFile = 0;
-			docNumOfCurrentFile = docListOfCurrentFile.size();
-		}		
+		//the partition is taken from the sorted list, i.e., the same slice on every host
+		Collections.sort(fileList);
+		
+		return null==partition ? fileList : partition.select(fileList);
 	}
 
 	@Override
@@ -115,33 +172,7 @@ public class SogouTCollectionReader extends CollectionReader_ImplBase {
 			throw new CollectionException(e);
 		}
 		
-		Element docElement = (Element)docListOfCurrentFile.get(docCursorOfCurrentFile++);
-		
-		Element metaElement = docElement.getChild("meta-info");		
-		String text = docElement.getChildText("text");
-		//
-		jcas.setDocumentText(text);
-		
-		//meta-info
-		TreeMap<String, String> metaMap = new TreeMap<>();
-		metaMap.put("id", docElement.getAttributeValue("id"));
-		
-		List tagList = metaElement.getChildren("tag");
-		for(int j=0; j<tagList.size(); j++){
-			Element tagElement = (Element)tagList.get(j);
-			String tagName = tagElement.getAttributeValue("name");
-			String tagText = tagElement.getText();
-			
-			metaMap.put(tagName, tagText);
-		}
-		
-	    SourceDocInfo srcDocInfo = new SourceDocInfo(jcas);	    
-		srcDocInfo.setId(metaMap.get("id"));
-		srcDocInfo.setHost(metaMap.get("host"));
-		srcDocInfo.setDate(metaMap.get("date"));
-		srcDocInfo.setUri(metaMap.get("url"));
-		srcDocInfo.setTitle(metaMap.get("title"));
-	    srcDocInfo.addToIndexes();
+		setDocument(jcas, pollDoc());
 	}
 	
 	public JCas getNext(JCasFactory jcasFactory) throws IOException, CollectionException {
@@ -152,36 +183,11 @@ public class SogouTCollectionReader extends CollectionReader_ImplBase {
 			System.err.println("createJCas() error!");
 		}
 		
-		Element docElement = (Element)docListOfCurrentFile.get(docCursorOfCurrentFile++);
-		
-		Element metaElement = docElement.getChild("meta-info");		
-		String text = docElement.getChildText("text");
-		//
-		jcas.setDocumentText(text);
-		
-		//meta-info
-		TreeMap<String, String> metaMap = new TreeMap<>();
-		metaMap.put("id", docElement.getAttributeValue("id"));
-		
-		List tagList = metaElement.getChildren("tag");
-		for(int j=0; j<tagList.size(); j++){
-			Element tagElement = (Element)tagList.get(j);
-			String tagName = tagElement.getAttributeValue("name");
-			String tagText = tagElement.getText();
-			
-			metaMap.put(tagName, tagText);
-		}
-		
-	    SourceDocInfo srcDocInfo = new SourceDocInfo(jcas);	    
-		srcDocInfo.setId(metaMap.get("id"));
-		srcDocInfo.setHost(metaMap.get("host"));
-		srcDocInfo.setDate(metaMap.get("date"));
-		srcDocInfo.setUri(metaMap.get("url"));
-		srcDocInfo.setTitle(metaMap.get("title"));
-	    srcDocInfo.addToIndexes();
+		SogouDoc doc = pollDoc();
+		setDocument(jcas, doc);
 	    
 	    //Document creation time provided & Translate it to expected string format
-	    String [] dateArray = metaMap.get("date").split("-");
+	    String [] dateArray = doc.getMeta("date").split("-");
 	    if(null!=dateArray && dateArray.length==3){
 	    	try {
 	    		Calendar c = Calendar.getInstance();
@@ -205,33 +211,114 @@ public class SogouTCollectionReader extends CollectionReader_ImplBase {
 	@Override
 	public boolean hasNext() throws IOException, CollectionException {
 		
-		if(fileCursorOfDirecory < fileSetList.size()){			 
+		if(null != nextDoc){
+			return true;
+		}
+		
+		if(null == prefetchQueue){
+			nextDoc = readNextDoc();
+		}else if(!prefetchFinished){
+			try {
+				nextDoc = prefetchQueue.take();
+			} catch (InterruptedException e) {
+				throw new CollectionException(e);
+			}
 			
-			if(docCursorOfCurrentFile == docNumOfCurrentFile){
-				
-				do {
-					docListOfCurrentFile = loadDocuments();
-					
-					docCursorOfCurrentFile = 0;
-					docNumOfCurrentFile = docListOfCurrentFile.size();
-					
-				}while((fileCursorOfDirecory<fileSetList.size()) && (docCursorOfCurrentFile==docNumOfCurrentFile));
+			if(END_OF_COLLECTION == nextDoc){
+				prefetchFinished = true;
+				nextDoc = null;
+			}
+		}
+		
+		//the collection is not complete, i.e., the consumer fails rather than ends normally
+		if(prefetchFinished && null != prefetchFailure){
+			throw new CollectionException(prefetchFailure);
+		}
+		
+		return null != nextDoc;
+	}
+	
+	/**
+	 * read the next document of the collection, i.e., move to the next file if the current one is exhausted
+	 * 
+	 * @return the next document, or null if all the files are exhausted
+	 * **/
+	private SogouDoc readNextDoc(){
+		
+		SogouDoc doc = null;
+		
+		while(null == doc){
+			
+			if(null == docStreamOfCurrentFile){
+				if(fileCursorOfDirecory < fileSetList.size()){
+					docStreamOfCurrentFile = openNextFile();
+					if(null == docStreamOfCurrentFile){
+						docsToSkip = 0;
+					}
+					continue;
+				}else{
+					return null;
+				}
 			}
 			
-			if(docCursorOfCurrentFile < docNumOfCurrentFile){
-				return true;
-			}else{
-				return false;
+			try {
+				doc = docStreamOfCurrentFile.next();
+			} catch (Exception e) {
+				// TODO: handle exception
+				e.printStackTrace();
+				System.err.println("Parsing error, the rest of the file is skipped!");
+				doc = null;
 			}
 			
-		}else if(0 == fileCursorOfDirecory){
-			return false;
-		}else if(docCursorOfCurrentFile < docNumOfCurrentFile){
-			return true;
-		}else{
-			return false;
+			if(null == doc){
+				docStreamOfCurrentFile.close();
+				docStreamOfCurrentFile = null;
+				docsToSkip = 0;
+			}else{
+				doc.setPosition(new DocPosition(nameOfCurrentFile, docCursorOfCurrentFile++));
+				
+				if(docsToSkip > 0){
+					docsToSkip--;
+					doc = null;
+				}
+			}
 		}
 		
+		return doc;		
+	}
+	
+	//the document at the cursor, and move the cursor forward
+	private SogouDoc pollDoc() throws IOException, CollectionException {
+		if(!hasNext()){
+			throw new CollectionException(new IllegalStateException("No more documents!"));
+		}
+		
+		SogouDoc doc = nextDoc;
+		nextDoc = null;
+		lastPosition = doc.getPosition();
+		return doc;
+	}
+	
+	/**
+	 * @return the position of the document returned by the last call of getNext(), null if none
+	 * **/
+	public DocPosition getLastPosition(){
+		return lastPosition;
+	}
+	
+	//text and meta-info
+	private void setDocument(JCas jcas, SogouDoc doc){
+		//
+		jcas.setDocumentText(doc.getText());
+		
+	    SourceDocInfo srcDocInfo = new SourceDocInfo(jcas);	    
+		srcDocInfo.setId(doc.getId());
+		srcDocInfo.setHost(doc.getMeta("host"));
+		srcDocInfo.setDate(doc.getMeta("date"));
+		srcDocInfo.setUri(doc.getMeta("url"));
+		srcDocInfo.setTitle(doc.getMeta("title"));
+		srcDocInfo.setCanonical(doc.getMeta("canonical"));
+	    srcDocInfo.addToIndexes();
 	}
 
 	@Override
@@ -242,64 +329,38 @@ public class SogouTCollectionReader extends CollectionReader_ImplBase {
 
 	@Override
 	public void close() throws IOException {
-		// TODO Auto-generated method stub
-
+		if(null != prefetchThread){
+			prefetchThread.interrupt();
+			try {
+				prefetchThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			prefetchThread = null;
+		}
+		
+		if(null != docStreamOfCurrentFile){
+			docStreamOfCurrentFile.close();
+			docStreamOfCurrentFile = null;
+		}
 	}
 	
-	private List loadDocuments(){
+	private SogouDocStreamReader openNextFile(){
 		// open input stream to file
 	    File file = (File) fileSetList.get(fileCursorOfDirecory++);
 		//logger.log(Level.INFO, "getNext(CAS) - Reading file " + file.getName());
+	    nameOfCurrentFile = file.getName();
+	    docCursorOfCurrentFile = 0;
 	    
-	    Pattern p = Pattern.compile("[^\\u0009\\u000A\\u000D\\u0020-\\uD7FF\uE000-\\uFFFD\\u10000-\\u10FFF]+"); 
-	    
-	    List docList = null;	    
-
 	    try {
-	    	//build a standard pseudo-xml file
-		    StringBuffer buffer = new StringBuffer();
-		    buffer.append("<add>");
-		    
-		    //String text = FileUtils.file2String(file);
-		    System.out.println("Loading:\t"+file.getAbsolutePath());
-		    ArrayList<String> lineList = IOText.getLinesAsAList(file.getAbsolutePath(), "utf-8");		    
-		    
-		    for(String line: lineList){
-		    	
-		    	/*
-		    	if(line.indexOf("id") >= 0){
-		    		int equalSign = line.indexOf("=");
-		    		int bigSign = line.indexOf(">");
-		    		line = line.substring(0, equalSign+1)+"\""+line.substring(equalSign+1, bigSign)+"\""+">";
-		    	}
-		    	*/
-		    	
-		    	///*
-		    	line = p.matcher(line).replaceAll("");		    
-			    if(line.indexOf("&") >= 0){
-			    	line = line.replaceAll("&", "&amp;");
-		    	}
-			    //*/
-		    	buffer.append(line);
-		    }		    
-		    
-		    buffer.append("</add>"); 
-	    	
-	    	SAXBuilder saxBuilder = new SAXBuilder();      
-	        Document xmlDocSet = saxBuilder.build(new InputStreamReader(new ByteArrayInputStream(buffer.toString().getBytes("utf-8"))));
-	        
-	        Element rootElement = xmlDocSet.getRootElement(); 
-	        docList = rootElement.getChildren("doc");
-	        
-	        return docList;
-	        
+	    	System.out.println("Loading:\t"+file.getAbsolutePath());
+	    	return new SogouDocStreamReader(file);	    	
 		} catch (Exception e) {
 			// TODO: handle exception
 			e.printStackTrace();
-			docList = null;
 		}
 	    
-	    return docList;
+	    return null;
 	}
 
 }
@@ -192,6 +192,28 @@ public class SourceDocInfo extends Annotation {
     if (SourceDocInfo_Type.featOkTst && ((SourceDocInfo_Type)jcasType).casFeat_date == null)
       jcasType.jcas.throwFeatMissing("date", "de.unihd.dbs.uima.types.heideltime.SourceDocInfo");
     jcasType.ll_cas.ll_setStringValue(addr, ((SourceDocInfo_Type)jcasType).casFeatCode_date, v);}    
+   
+    
+  //*--------------*
+  //* Feature: canonical
+
+  /** getter for canonical - gets id of the document this one is a near-duplicate of
+   * @generated
+   * @return value of the feature 
+   */
+  public String getCanonical() {
+    if (SourceDocInfo_Type.featOkTst && ((SourceDocInfo_Type)jcasType).casFeat_canonical == null)
+      jcasType.jcas.throwFeatMissing("canonical", "de.unihd.dbs.uima.types.heideltime.SourceDocInfo");
+    return jcasType.ll_cas.ll_getStringValue(addr, ((SourceDocInfo_Type)jcasType).casFeatCode_canonical);}
+    
+  /** setter for canonical - sets id of the document this one is a near-duplicate of 
+   * @generated
+   * @param v value to set into the feature 
+   */
+  public void setCanonical(String v) {
+    if (SourceDocInfo_Type.featOkTst && ((SourceDocInfo_Type)jcasType).casFeat_canonical == null)
+      jcasType.jcas.throwFeatMissing("canonical", "de.unihd.dbs.uima.types.heideltime.SourceDocInfo");
+    jcasType.ll_cas.ll_setStringValue(addr, ((SourceDocInfo_Type)jcasType).casFeatCode_canonical, v);}
   }
 
     
\ No newline at end of file
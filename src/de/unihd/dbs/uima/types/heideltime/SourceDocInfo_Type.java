@@ -131,6 +131,30 @@ public class SourceDocInfo_Type extends Annotation_Type {
     
   
  
+  /** @generated */
+  final Feature casFeat_canonical;
+  /** @generated */
+  final int     casFeatCode_canonical;
+  /** @generated
+   * @param addr low level Feature Structure reference
+   * @return the feature value 
+   */ 
+  public String getCanonical(int addr) {
+        if (featOkTst && casFeat_canonical == null)
+      jcas.throwFeatMissing("canonical", "de.unihd.dbs.uima.types.heideltime.SourceDocInfo");
+    return ll_cas.ll_getStringValue(addr, casFeatCode_canonical);
+  }
+  /** @generated
+   * @param addr low level Feature Structure reference
+   * @param v value to set 
+   */    
+  public void setCanonical(int addr, String v) {
+        if (featOkTst && casFeat_canonical == null)
+      jcas.throwFeatMissing("canonical", "de.unihd.dbs.uima.types.heideltime.SourceDocInfo");
+    ll_cas.ll_setStringValue(addr, casFeatCode_canonical, v);}
+    
+  
+ 
   /** @generated */
   final Feature casFeat_host;
   /** @generated */
@@ -211,6 +235,10 @@ public class SourceDocInfo_Type extends Annotation_Type {
     casFeat_date = jcas.getRequiredFeatureDE(casType, "date", "uima.cas.String", featOkTst);
     casFeatCode_date  = (null == casFeat_date) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_date).getCode();
 
+ 
+    casFeat_canonical = jcas.getRequiredFeatureDE(casType, "canonical", "uima.cas.String", featOkTst);
+    casFeatCode_canonical  = (null == casFeat_canonical) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_canonical).getCode();
+
   }
 }
 
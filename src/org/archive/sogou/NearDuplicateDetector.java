@@ -0,0 +1,142 @@
+package org.archive.sogou;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Function:
+ *
+ * Detects the near-duplicate documents, e.g., the same news article republished by different hosts,
+ * based on the 64-bit SimHash of the (cleaned) text.
+ *
+ * Two documents are near-duplicates if they have the same publication date and their fingerprints differ in at most maxDistance bits.
+ * The date is required since the tagged result of a document, e.g., the value of "今天", depends on it.
+ * The fingerprint is split into maxDistance+1 bands, i.e., two near-duplicates share at least one band exactly,
+ * thus only the documents sharing a band are compared.
+ *
+ * The first document of a group of near-duplicates is the canonical one.
+ *
+ * **/
+
+public class NearDuplicateDetector {
+
+	public enum Mode {
+		//near-duplicates are removed
+		SKIP,
+		//near-duplicates are kept, and linked to the canonical document via <tag name="canonical">
+		LINK
+	}
+
+	//the length of the shingles, i.e., character n-grams
+	private static final int shingleLength = 4;
+
+	private static final int maxDistance = 3;
+	private static final int bandNum = maxDistance+1;
+	private static final int bandBits = 64/bandNum;
+
+	//canonical documents
+	private ArrayList<Long> fingerprintList = new ArrayList<Long>();
+	private ArrayList<String> docnoList = new ArrayList<String>();
+	private ArrayList<String> dateList = new ArrayList<String>();
+
+	//band key -> positions of the canonical documents
+	private ArrayList<HashMap<Long, ArrayList<Integer>>> bandIndexes = new ArrayList<HashMap<Long, ArrayList<Integer>>>();
+
+	public NearDuplicateDetector(){
+		for(int b=0; b<bandNum; b++){
+			bandIndexes.add(new HashMap<Long, ArrayList<Integer>>());
+		}
+	}
+
+	/**
+	 * @return the SimHash of the given text
+	 * **/
+	public static long fingerprint(String text){
+
+		int [] weights = new int[64];
+
+		int shingleNum = Math.max(1, text.length()-shingleLength+1);
+		for(int i=0; i<shingleNum; i++){
+
+			long h = hash(text, i, Math.min(text.length(), i+shingleLength));
+
+			for(int bit=0; bit<64; bit++){
+				if(0 != (h & (1L<<bit))){
+					weights[bit]++;
+				}else{
+					weights[bit]--;
+				}
+			}
+		}
+
+		long fingerprint = 0L;
+		for(int bit=0; bit<64; bit++){
+			if(weights[bit] > 0){
+				fingerprint |= (1L<<bit);
+			}
+		}
+
+		return fingerprint;
+	}
+
+	/**
+	 * checks a document against the canonical documents seen so far, and registers it as a canonical one if no near-duplicate is found
+	 *
+	 * @return the docno of the canonical document, or null if the given document is a canonical one
+	 * **/
+	public String check(String docno, String date, long fingerprint){
+
+		for(int b=0; b<bandNum; b++){
+			ArrayList<Integer> candidates = bandIndexes.get(b).get(bandKey(fingerprint, b, date));
+			if(null == candidates){
+				continue;
+			}
+
+			for(Integer k: candidates){
+				if(Long.bitCount(fingerprint ^ fingerprintList.get(k)) <= maxDistance && date.equals(dateList.get(k))){
+					return docnoList.get(k);
+				}
+			}
+		}
+
+		int k = fingerprintList.size();
+		fingerprintList.add(fingerprint);
+		docnoList.add(docno);
+		dateList.add(date);
+
+		for(int b=0; b<bandNum; b++){
+			Long key = bandKey(fingerprint, b, date);
+			ArrayList<Integer> candidates = bandIndexes.get(b).get(key);
+			if(null == candidates){
+				candidates = new ArrayList<Integer>(1);
+				bandIndexes.get(b).put(key, candidates);
+			}
+			candidates.add(k);
+		}
+
+		return null;
+	}
+
+	//the b-th band, combined with the date so that documents of different dates rarely collide
+	private static long bandKey(long fingerprint, int b, String date){
+		long band = (fingerprint >>> (b*bandBits)) & ((1L<<bandBits)-1);
+		return ((long)date.hashCode() << bandBits) ^ band;
+	}
+
+	//64-bit FNV-1a, followed by a finalizer that spreads the bits
+	private static long hash(String text, int from, int to){
+		long h = 0xcbf29ce484222325L;
+		for(int i=from; i<to; i++){
+			h ^= text.charAt(i);
+			h *= 0x100000001b3L;
+		}
+
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+
+		return h;
+	}
+}
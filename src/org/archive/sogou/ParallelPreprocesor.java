@@ -0,0 +1,445 @@
+package org.archive.sogou;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.archive.util.io.CodePointFilter;
+import org.jdom.input.SAXBuilder;
+
+/**
+ * Function:
+ *
+ * The multi-core version of Preprocesor.toTemporaliaStyle().
+ *
+ * (1) the raw file is split into byte ranges, each of which starts at a line beginning with <doc>;
+ * 	   GBK never uses '\n' or '<' as a trail byte, thus the split never breaks a character or a record;
+ * (2) the ranges are converted concurrently by a ForkJoinPool, each range is written to its own part file;
+ * (3) the part files are stitched in the original order, thus the numbering of the output files,
+ * 	   i.e., SogouCA_TemNoTag_********.xml, and their content are the same as the single-threaded version.
+ *
+ * **/
+
+public class ParallelPreprocesor {
+
+	//more ranges than threads, so that a range with long records does not leave the other threads idle
+	private static final int rangesPerThread = 8;
+
+	private static final byte [] recordStart = "\n<doc>".getBytes();
+
+	/**
+	 * get the Temporalia-Styple (Non-Tagged) version using the given number of threads
+	 * **/
+	public static void toTemporaliaStyle(String originalFile, String outputDir, int threadNum){
+
+		if(threadNum <= 1){
+			Preprocesor.toTemporaliaStyle(originalFile, outputDir);
+			return;
+		}
+
+		RangeResult [] results = null;
+
+		try {
+
+			File oriFile = new File(originalFile);
+			long [] boundaries = splitIntoRanges(oriFile, threadNum*rangesPerThread);
+
+			results = new RangeResult[boundaries.length-1];
+
+			ForkJoinPool pool = new ForkJoinPool(threadNum);
+			pool.invoke(new RangeTask(oriFile, new File(outputDir), boundaries, results, 0, results.length));
+			pool.shutdown();
+
+			Counts counts = new Counts();
+			stitch(outputDir, results, counts);
+
+			for(RangeResult result: results){
+				counts.totalDoc += result.totalDoc;
+			}
+
+			//
+			System.out.println("Total number of documents in the input file:\t"+counts.totalDoc);
+			System.out.println("Total number of accepted documents:\t"+counts.acceptedDoc);
+			if(null != Preprocesor.dedupMode){
+				System.out.println("Total number of near-duplicate documents:\t"+counts.duplicateDoc);
+			}
+
+		} catch (Exception e) {
+			// TODO: handle exception
+			e.printStackTrace();
+			System.err.println("Parallel preprocessing error!");
+		} finally {
+			if(null != results){
+				for(RangeResult result: results){
+					if(null!=result && null!=result.partFile){
+						result.partFile.delete();
+					}
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * @return the range boundaries, i.e., range i is [boundaries[i], boundaries[i+1]), empty ranges are removed
+	 * **/
+	static long [] splitIntoRanges(File oriFile, int rangeNum) throws IOException{
+
+		RandomAccessFile raf = new RandomAccessFile(oriFile, "r");
+
+		try {
+			long length = raf.length();
+
+			ArrayList<Long> boundaryList = new ArrayList<Long>();
+			boundaryList.add(0L);
+
+			for(int i=1; i<rangeNum; i++){
+				long start = nextRecordStart(raf, length*i/rangeNum);
+				if(start > boundaryList.get(boundaryList.size()-1) && start < length){
+					boundaryList.add(start);
+				}
+			}
+
+			boundaryList.add(length);
+
+			long [] boundaries = new long[boundaryList.size()];
+			for(int i=0; i<boundaries.length; i++){
+				boundaries[i] = boundaryList.get(i);
+			}
+
+			return boundaries;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return the offset of the first line at or after pos that begins with <doc>, or the file length if there is none
+	 * **/
+	private static long nextRecordStart(RandomAccessFile raf, long pos) throws IOException{
+
+		long length = raf.length();
+		//so that a record starting exactly at pos is found
+		long offset = Math.max(0, pos-1);
+
+		byte [] buffer = new byte[64*1024];
+
+		while(offset < length){
+			raf.seek(offset);
+			int n = raf.read(buffer);
+			if(n <= 0){
+				break;
+			}
+
+			for(int i=0; i+recordStart.length<=n; i++){
+				int j = 0;
+				while(j<recordStart.length && buffer[i+j]==recordStart[j]){
+					j++;
+				}
+				if(j == recordStart.length){
+					return offset+i+1;
+				}
+			}
+
+			if(offset+n >= length){
+				break;
+			}
+			//overlap, in case the pattern crosses the buffer boundary
+			offset += n-recordStart.length+1;
+		}
+
+		return length;
+	}
+
+	/**
+	 * stitch the part files in order, the accepted documents are numbered globally as the single-threaded version does;
+	 * near-duplicates, if required, are detected here since the canonical document is the first one in the original order
+	 * **/
+	private static void stitch(String outputDir, RangeResult [] results, Counts counts) throws IOException{
+
+		NearDuplicateDetector.Mode dedupMode = Preprocesor.dedupMode;
+		NearDuplicateDetector detector = (null==dedupMode) ? null : new NearDuplicateDetector();
+
+		FileOutputStream outStream = null;
+		FileChannel outChannel = null;
+
+		try {
+			for(RangeResult result: results){
+
+				int docNum = result.docOffsets.size()-1;
+				if(docNum <= 0){
+					continue;
+				}
+
+				FileInputStream partStream = new FileInputStream(result.partFile);
+				FileChannel partChannel = partStream.getChannel();
+
+				try {
+					//consecutive documents of the part file to be copied into the current output file as a whole
+					long runFrom = 0, runTo = 0;
+
+					for(int d=0; d<docNum; d++){
+
+						String canonical = null;
+						if(null != detector){
+							canonical = detector.check(result.docnoList.get(d), result.dateList.get(d), result.fingerprintList.get(d));
+							if(null != canonical){
+								counts.duplicateDoc++;
+								if(NearDuplicateDetector.Mode.SKIP == dedupMode){
+									continue;
+								}
+							}
+						}
+
+						if(0 == counts.acceptedDoc % Preprocesor.docPerFile){
+							copy(partChannel, runFrom, runTo, outChannel);
+							runFrom = runTo = 0;
+
+							if(null != outStream){
+								outStream.close();
+							}
+
+							outStream = new FileOutputStream(Preprocesor.getOutputFile(outputDir, counts.acceptedDoc/Preprocesor.docPerFile));
+							outChannel = outStream.getChannel();
+						}
+
+						long from = result.docOffsets.get(d);
+						long to = result.docOffsets.get(d+1);
+
+						if(null == canonical){
+							if(runTo != from){
+								copy(partChannel, runFrom, runTo, outChannel);
+								runFrom = from;
+							}
+							runTo = to;
+						}else{
+							copy(partChannel, runFrom, runTo, outChannel);
+							runFrom = runTo = 0;
+
+							//the linked document is rewritten, i.e., read back rather than transferred
+							ByteBuffer docBuffer = ByteBuffer.allocate((int)(to-from));
+							while(docBuffer.hasRemaining()){
+								if(partChannel.read(docBuffer, from+docBuffer.position()) < 0){
+									break;
+								}
+							}
+
+							String temDoc = new String(docBuffer.array(), "utf-8");
+							outChannel.write(ByteBuffer.wrap(Preprocesor.linkToCanonical(temDoc, canonical).getBytes("utf-8")));
+						}
+
+						counts.acceptedDoc++;
+					}
+
+					copy(partChannel, runFrom, runTo, outChannel);
+				} finally {
+					partStream.close();
+				}
+			}
+		} finally {
+			if(null != outStream){
+				outStream.close();
+			}
+		}
+	}
+
+	private static void copy(FileChannel partChannel, long from, long to, FileChannel outChannel) throws IOException{
+		while(from < to){
+			from += partChannel.transferTo(from, to-from, outChannel);
+		}
+	}
+
+	private static class Counts {
+		int totalDoc;
+		int acceptedDoc;
+		int duplicateDoc;
+	}
+
+	/**
+	 * the outcome of converting one range
+	 * **/
+	private static class RangeResult {
+		File partFile;
+		int totalDoc;
+		//the offset of each accepted document within the part file, plus the length of the part file
+		ArrayList<Long> docOffsets = new ArrayList<Long>();
+		//for near-duplicate detection
+		ArrayList<String> docnoList = new ArrayList<String>();
+		ArrayList<String> dateList = new ArrayList<String>();
+		ArrayList<Long> fingerprintList = new ArrayList<Long>();
+	}
+
+	/**
+	 * converts the ranges [lo, hi) by recursively splitting them among the worker threads
+	 * **/
+	private static class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private File oriFile;
+		private File outputDir;
+		private long [] boundaries;
+		private RangeResult [] results;
+		private int lo;
+		private int hi;
+
+		RangeTask(File oriFile, File outputDir, long [] boundaries, RangeResult [] results, int lo, int hi){
+			this.oriFile = oriFile;
+			this.outputDir = outputDir;
+			this.boundaries = boundaries;
+			this.results = results;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if(hi-lo > 1){
+				int mid = (lo+hi) >>> 1;
+				invokeAll(new RangeTask(oriFile, outputDir, boundaries, results, lo, mid),
+						new RangeTask(oriFile, outputDir, boundaries, results, mid, hi));
+			}else if(hi-lo == 1){
+				try {
+					results[lo] = convertRange(boundaries[lo], boundaries[lo+1]);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+
+		private RangeResult convertRange(long start, long end) throws IOException{
+
+			RangeResult result = new RangeResult();
+			File partFile = File.createTempFile("SogouCA_TemNoTag_", ".part", outputDir);
+			boolean converted = false;
+
+			try {
+				FileInputStream rangeStream = null;
+				SogouRecordReader recordReader = null;
+				BufferedOutputStream partOutput = null;
+
+				try {
+					rangeStream = new FileInputStream(oriFile);
+					rangeStream.getChannel().position(start);
+
+					recordReader = new SogouRecordReader(new BufferedReader(new InputStreamReader(
+							new BoundedInputStream(rangeStream, end-start), "gbk")));
+
+					partOutput = new BufferedOutputStream(new FileOutputStream(partFile));
+
+					//one builder and filter per range, i.e., never shared between threads
+					SAXBuilder saxBuilder = new SAXBuilder();
+					CodePointFilter contentFilter = CodePointFilter.newContentFilter();
+
+					long offset = 0;
+					String docString = null;
+					while(null != (docString=recordReader.nextRecord())){
+
+						result.totalDoc++;
+						String temDoc = Preprocesor.toTemporaliaDoc(saxBuilder, contentFilter, docString);
+
+						if(null != temDoc){
+							if(null != Preprocesor.dedupMode){
+								result.docnoList.add(Preprocesor.getDocno(temDoc));
+								result.dateList.add(Preprocesor.getDate(temDoc));
+								result.fingerprintList.add(NearDuplicateDetector.fingerprint(Preprocesor.getText(temDoc)));
+							}
+
+							byte [] bytes = temDoc.getBytes("utf-8");
+							result.docOffsets.add(offset);
+							partOutput.write(bytes);
+							offset += bytes.length;
+						}
+					}
+
+					result.docOffsets.add(offset);
+					partOutput.flush();
+				} finally {
+					try {
+						//the reader closes rangeStream
+						if(null != recordReader){
+							recordReader.close();
+						}else if(null != rangeStream){
+							rangeStream.close();
+						}
+					} finally {
+						if(null != partOutput){
+							partOutput.close();
+						}
+					}
+				}
+
+				converted = true;
+			} finally {
+				//a failed range is not in results, i.e., its part file would be left in the directory read by step 2
+				if(!converted){
+					partFile.delete();
+				}
+			}
+
+			result.partFile = partFile;
+			return result;
+		}
+	}
+
+	/**
+	 * reads at most the given number of bytes from the underlying stream
+	 * **/
+	private static class BoundedInputStream extends FilterInputStream {
+
+		private long remaining;
+
+		BoundedInputStream(InputStream in, long limit){
+			super(in);
+			this.remaining = limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if(remaining <= 0){
+				return -1;
+			}
+			int b = in.read();
+			if(b >= 0){
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte [] b, int off, int len) throws IOException {
+			if(remaining <= 0){
+				return -1;
+			}
+			int n = in.read(b, off, (int)Math.min(len, remaining));
+			if(n > 0){
+				remaining -= n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int)Math.min(in.available(), remaining);
+		}
+	}
+}
@@ -6,9 +6,8 @@ import java.io.File;
 import java.io.InputStreamReader;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import org.archive.util.io.CodePointFilter;
 import org.archive.util.io.IOText;
 import org.jdom.Document;
 import org.jdom.Element;
@@ -35,15 +34,13 @@ import org.jdom.input.SAXBuilder;
 
 public class Preprocesor {
 	
-	//for filtering the noisy characters
-	private static Pattern noisyCharacters = Pattern.compile("[^\\u0009\\u000A\\u000D\\u0020-\\uD7FF\uE000-\\uFFFD\\u10000-\\u10FFF]+"); 
-	
 	private static int totalDoc;
 	private static int acceptedDoc;
+	private static int duplicateDoc;
 	private static int refusedDoc;
 	private static int zeroContentDoc;
 	
-	private static final int docPerFile = 5000;
+	static final int docPerFile = 5000;
 	private static final DecimalFormat df = new DecimalFormat("00000000");
 	
 	/**
@@ -69,14 +66,12 @@ public class Preprocesor {
 			
 			StringBuffer docBuffer = new StringBuffer();
 			
+			CodePointFilter lineFilter = CodePointFilter.newNoisyCharacterFilter();
+			
 			for(String line: lineList){
 				
-				//filter unnormal characters
-				line = noisyCharacters.matcher(line).replaceAll("");
-				//due to different inner way of expression
-				if(line.indexOf("&") >= 0){
-		    		line = line.replaceAll("&", "&amp;");
-		    	}				
+				//filter unnormal characters, and escape '&' due to different inner way of expression
+				line = lineFilter.filter(line);
 				
 				if(line.indexOf("</doc>") >= 0){
 					
@@ -122,47 +117,73 @@ public class Preprocesor {
 	
 	/**
 	 * get the Temporalia-Styple (Non-Tagged) version
+	 * 
+	 * the original file is decoded line by line and each <doc>...</doc> record is converted as soon as it is complete,
+	 * i.e., only the current record is kept in memory no matter how big the original file is
 	 * **/
 	public static void toTemporaliaStyle(String originalFile, String outputDir){
 		
+		totalDoc = 0;
+		acceptedDoc = 0;
+		duplicateDoc = 0;
+		
+		BufferedWriter utf8Writer = null;
+		
+		NearDuplicateDetector detector = (null==dedupMode) ? null : new NearDuplicateDetector();
+		
 		try {
-			//original file
-			ArrayList<String> lineList = IOText.getLinesAsAList(originalFile, "gbk");
+			//original file, decoded incrementally
+			SogouRecordReader recordReader = new SogouRecordReader(IOText.getBufferedReader(originalFile, "gbk"));
 			
-			StringBuffer docBuffer = new StringBuffer();
+			//one builder and filter for the whole run rather than one per record
+			SAXBuilder saxBuilder = new SAXBuilder();
+			CodePointFilter contentFilter = CodePointFilter.newContentFilter();
 			
-			for(String line: lineList){
+			String docString = null;
+			while(null != (docString=recordReader.nextRecord())){
 				
-				//filter unnormal characters
-				line = noisyCharacters.matcher(line).replaceAll("");
-				//due to different inner way of expression
-				if(line.indexOf("&") >= 0){
-		    		line = line.replaceAll("&", "&amp;");
-		    	}				
+				//process
+				totalDoc++;
+				String temDoc = toTemporaliaDoc(saxBuilder, contentFilter, docString);
 				
-				if(line.indexOf("</doc>") >= 0){
-					
-					docBuffer.append(line);
-					
-					//process
-					totalDoc++;
-					toTemporaliaStyple(outputDir, docBuffer.toString());
+				if(null!=temDoc && null!=detector){
+					String canonical = detector.check(getDocno(temDoc), getDate(temDoc), NearDuplicateDetector.fingerprint(getText(temDoc)));
+					if(null != canonical){
+						duplicateDoc++;
+						temDoc = (NearDuplicateDetector.Mode.SKIP==dedupMode) ? null : linkToCanonical(temDoc, canonical);
+					}
+				}
+				
+				if(null != temDoc){
 					
-					//new
-					docBuffer.delete(0, docBuffer.length());
+					if(0 == acceptedDoc % docPerFile){
+						if(null != utf8Writer){
+							utf8Writer.flush();
+							utf8Writer.close();
+						}
+						
+						utf8Writer = IOText.getBufferedWriter(getOutputFile(outputDir, acceptedDoc/docPerFile).getAbsolutePath(), "utf-8");
+					}
 					
-				}else {
-					docBuffer.append(line);
+					acceptedDoc++;
+					utf8Writer.write(temDoc);
 				}
 			}
 			
+			recordReader.close();
+			
 			//
-			utf8Writer.flush();
-			utf8Writer.close();
+			if(null != utf8Writer){
+				utf8Writer.flush();
+				utf8Writer.close();
+			}
 			
 			//
 			System.out.println("Total number of documents in the input file:\t"+totalDoc);
 			System.out.println("Total number of accepted documents:\t"+acceptedDoc);
+			if(null != detector){
+				System.out.println("Total number of near-duplicate documents:\t"+duplicateDoc);
+			}
 	
 		} catch (Exception e) {
 			// TODO: handle exception
@@ -171,23 +192,65 @@ public class Preprocesor {
 		
 	}
 	
+	/**
+	 * for near-duplicate detection, null means no detection
+	 * **/
+	static NearDuplicateDetector.Mode dedupMode = null;
+	
+	/**
+	 * set how the near-duplicate documents are processed, i.e., skip or link, or null for no detection
+	 * **/
+	public static void setDedupMode(NearDuplicateDetector.Mode mode){
+		dedupMode = mode;
+	}
+	
+	/**
+	 * add the link to the canonical document as the last tag of <meta-info>
+	 * **/
+	static String linkToCanonical(String temDoc, String canonicalDocno){
+		int index = temDoc.indexOf("</meta-info>");
+		return temDoc.substring(0, index)+"<tag name=\"canonical\">"+canonicalDocno+"</tag>"+lineSeparator+temDoc.substring(index);
+	}
+	
+	//the fields of a converted document
+	static String getDocno(String temDoc){
+		return between(temDoc, "<doc id=\"", "\">");
+	}
+	
+	static String getDate(String temDoc){
+		return between(temDoc, "<tag name=\"date\">", "</tag>");
+	}
+	
+	static String getText(String temDoc){
+		return between(temDoc, "<text>"+lineSeparator, lineSeparator+"</text>");
+	}
+	
+	private static String between(String temDoc, String start, String end){
+		int from = temDoc.indexOf(start)+start.length();
+		return temDoc.substring(from, temDoc.indexOf(end, from));
+	}
+	
+	/**
+	 * @return the k-th output file, i.e., the one storing the accepted documents [k*docPerFile, (k+1)*docPerFile)
+	 * **/
+	static File getOutputFile(String outputDir, int k){
+		String outFileName = "SogouCA_TemNoTag_"+df.format(k)+".xml";
+		return new File(outputDir, outFileName);
+	}
+	
 	/**
 	 * for meta-info processing
 	 * **/
 	
-	// patterns used for extracting date from url
-	//	/12/0702/
-	private static Pattern publicationDate_1 = Pattern.compile("/12/[0-9]{4}/"); 
-	//	/20120311/	or /2012324/	or	/201233/
-	private static Pattern publicationDate_4 = Pattern.compile("/[0-9]{6,8}/"); 
-	//	/2012/03/11/
-	private static Pattern publicationDate_2 = Pattern.compile("/[0-9]{4}/[0-9]{2}/[0-9]{2}/"); 
-	//	/2012/0311/
-	private static Pattern publicationDate_3 = Pattern.compile("/[0-9]{4}/[0-9]{4}/"); 
-	//detail_2012_06/12/
-	private static Pattern publicationDate_5 = Pattern.compile("detail_[0-9]{4}_[0-9]{2}/[0-9]{2}/"); 
-	//20120611.html
-	private static Pattern publicationDate_6 = Pattern.compile("2012[0-9]{4}."); 
+	//for extracting the publication date from url, June and July of 2012 are accepted by default
+	private static UrlDateScanner dateScanner = new UrlDateScanner();
+	
+	/**
+	 * set the accepted range of publication dates, e.g., UrlDateScanner.parse("20120601-20120731")
+	 * **/
+	public static void setDateScanner(UrlDateScanner scanner){
+		dateScanner = scanner;
+	}
 	
 	//convert an original doc to the non-tagged version for Temporalia-2
 	//for test
@@ -212,40 +275,14 @@ public class Preprocesor {
 			 * String str="[\u3002\uff1b\uff0c\uff1a\u201c\u201d\uff08\uff09\u3001\uff1f\u300a\u300b]"
 			 * 该表达式可以识别出： 。 ；  ， ： “ ”（ ） 、 ？ 《 》 这些标点符号。
 			 * **/
-			content = content.replaceAll("[^０１２３４５６７８９a-z0-9A-Z\u4E00-\u9FFF\u3002\uff1b\uff0c\uff1a\u201c\u201d\uff08\uff09\u3001\uff1f\u300a\u300b]+", "");
+			content = CodePointFilter.newContentFilter().filter(content);
 			
 			//for host
 			int index = url.indexOf("://");
 			String host = url.substring(index+3);
 			host = url.substring(0, index+3+host.indexOf("/"));
-			//for publication date			
-			Matcher matcher_1 = publicationDate_1.matcher(url);
-			Matcher matcher_2 = publicationDate_2.matcher(url);
-			Matcher matcher_3 = publicationDate_3.matcher(url);
-			Matcher matcher_4 = publicationDate_4.matcher(url);
-			Matcher matcher_5 = publicationDate_5.matcher(url);
-			Matcher matcher_6 = publicationDate_6.matcher(url);
-			String dateStr = null;
-			
-			if(matcher_1.find()){
-				dateStr = matcher_1.group();
-				dateStr = convertDate_1(dateStr);
-			}else if(matcher_2.find()){
-				dateStr = matcher_2.group();
-				dateStr = convertDate_2(dateStr);
-			}else if(matcher_3.find()){
-				dateStr = matcher_3.group();
-				dateStr = convertDate_3(dateStr);
-			}else if(matcher_4.find()){
-				dateStr = matcher_4.group();
-				dateStr = convertDate_4(dateStr);
-			}else if(matcher_5.find()){
-				dateStr = matcher_5.group();
-				dateStr = convertDate_5(dateStr);
-			}else if(matcher_6.find()){
-				dateStr = matcher_6.group();
-				dateStr = convertDate_6(dateStr);
-			}	
+			//for publication date
+			String dateStr = dateScanner.scan(url);
 		
 			if(null != dateStr && content.length()>0){
 				
@@ -302,34 +339,19 @@ public class Preprocesor {
 		
 	}
 	
-	private static BufferedWriter utf8Writer = null;
+	private static final String lineSeparator = System.getProperty("line.separator");
 	
-	private static void toTemporaliaStyple(String outputDir, String docString){	
+	/**
+	 * convert an original record to the non-tagged version for Temporalia-2
+	 * 
+	 * it touches no shared state, thus it can be called concurrently as long as each thread uses its own SAXBuilder and CodePointFilter
+	 * 
+	 * @return the converted document, or null if the record is refused due to no-date, zero-content or a parsing error
+	 * **/
+	static String toTemporaliaDoc(SAXBuilder saxBuilder, CodePointFilter contentFilter, String docString){	
 		
 		try {
 			
-			if(0 == acceptedDoc % docPerFile){			
-				try {
-					if(acceptedDoc > 0){
-						utf8Writer.flush();
-						utf8Writer.close();
-						utf8Writer = null;
-					}
-					
-					int k = acceptedDoc/docPerFile;
-					String suffix = df.format(k);
-					
-					String outFileName = "SogouCA_TemNoTag_"+suffix+".xml";
-					
-					File outFile = new File(outputDir, outFileName);
-					utf8Writer = IOText.getBufferedWriter(outFile.getAbsolutePath(), "utf-8");
-				} catch (Exception e) {
-					// TODO: handle exception
-					e.printStackTrace();
-				}
-			}
-			
-			SAXBuilder saxBuilder = new SAXBuilder();      
 	        Document xmlDocSet = saxBuilder.build(new InputStreamReader(new ByteArrayInputStream(docString.getBytes("utf-8"))));
 	        
 	        Element rootElement = xmlDocSet.getRootElement(); 
@@ -345,72 +367,33 @@ public class Preprocesor {
 			 * String str="[\u3002\uff1b\uff0c\uff1a\u201c\u201d\uff08\uff09\u3001\uff1f\u300a\u300b]"
 			 * for recognizing ： 。 ；  ， ： “ ”（ ） 、 ？ 《 》 
 			 * **/
-			content = content.replaceAll("[^０１２３４５６７８９a-z0-9A-Z\u4E00-\u9FFF\u3002\uff1b\uff0c\uff1a\u201c\u201d\uff08\uff09\u3001\uff1f\u300a\u300b]+", "");
+			content = contentFilter.filter(content);
 			
 			//for host
 			int index = url.indexOf("://");
 			String host = url.substring(index+3);
 			host = url.substring(0, index+3+host.indexOf("/"));
-			//for publication date			
-			Matcher matcher_1 = publicationDate_1.matcher(url);
-			Matcher matcher_2 = publicationDate_2.matcher(url);
-			Matcher matcher_3 = publicationDate_3.matcher(url);
-			Matcher matcher_4 = publicationDate_4.matcher(url);
-			Matcher matcher_5 = publicationDate_5.matcher(url);
-			Matcher matcher_6 = publicationDate_6.matcher(url);
-			String dateStr = null;
-			
-			if(matcher_1.find()){
-				dateStr = matcher_1.group();
-				dateStr = convertDate_1(dateStr);
-			}else if(matcher_2.find()){
-				dateStr = matcher_2.group();
-				dateStr = convertDate_2(dateStr);
-			}else if(matcher_3.find()){
-				dateStr = matcher_3.group();
-				dateStr = convertDate_3(dateStr);
-			}else if(matcher_4.find()){
-				dateStr = matcher_4.group();
-				dateStr = convertDate_4(dateStr);
-			}else if(matcher_5.find()){
-				dateStr = matcher_5.group();
-				dateStr = convertDate_5(dateStr);
-			}else if(matcher_6.find()){
-				dateStr = matcher_6.group();
-				dateStr = convertDate_6(dateStr);
-			}	
+			//for publication date
+			String dateStr = dateScanner.scan(url);
 		
 			if(null != dateStr && content.length()>0){
 				
+				StringBuilder temDoc = new StringBuilder();
 				
+				temDoc.append("<doc id=\""+docno+"\">").append(lineSeparator);
+				temDoc.append("<meta-info>").append(lineSeparator);
+				temDoc.append("<tag name=\"host\">"+host+"</tag>").append(lineSeparator);
+				temDoc.append("<tag name=\"date\">"+dateStr+"</tag>").append(lineSeparator);
+				temDoc.append("<tag name=\"url\">"+url+"</tag>").append(lineSeparator);
+				temDoc.append("<tag name=\"title\">"+contenttitle+"</tag>").append(lineSeparator);
+				temDoc.append("<tag name=\"source-encoding\">UTF-8</tag>").append(lineSeparator);
+				temDoc.append("</meta-info>").append(lineSeparator);
+				temDoc.append("<text>").append(lineSeparator);
+				temDoc.append(content).append(lineSeparator);
+				temDoc.append("</text>").append(lineSeparator);
+				temDoc.append("</doc>").append(lineSeparator);
 				
-				acceptedDoc++;			
-				
-				utf8Writer.write("<doc id=\""+docno+"\">");
-				utf8Writer.newLine();
-				utf8Writer.write("<meta-info>");
-				utf8Writer.newLine();
-				utf8Writer.write("<tag name=\"host\">"+host+"</tag>");
-				utf8Writer.newLine();
-				utf8Writer.write("<tag name=\"date\">"+dateStr+"</tag>");
-				utf8Writer.newLine();
-				utf8Writer.write("<tag name=\"url\">"+url+"</tag>");
-				utf8Writer.newLine();
-				utf8Writer.write("<tag name=\"title\">"+contenttitle+"</tag>");
-				utf8Writer.newLine();
-				utf8Writer.write("<tag name=\"source-encoding\">UTF-8</tag>");
-				utf8Writer.newLine();
-				utf8Writer.write("</meta-info>");
-				utf8Writer.newLine();
-				utf8Writer.write("<text>");
-				utf8Writer.newLine();
-				utf8Writer.write(content);
-				utf8Writer.newLine();
-				utf8Writer.write("</text>");
-				utf8Writer.newLine();
-				utf8Writer.write("</doc>");
-				utf8Writer.newLine();
-				
+				return temDoc.toString();
 			}
 			
 		} catch (Exception e) {
@@ -418,128 +401,7 @@ public class Preprocesor {
 			e.printStackTrace();
 		}
 		
-	}
-	
-	//	//	/20120311/	or /2012324/	or	/201233/
-	private static  String convertDate_4(String rawStr) {
-		
-		String dateStr = rawStr.substring(1, rawStr.length()-1);
-		
-		String yearStr = null;
-		String monStr = null;
-		String dayStr = null;
-		
-		if(dateStr.length() == 6){
-			yearStr = dateStr.substring(0, 4);
-			monStr = dateStr.substring(4, 5);
-			dayStr = dateStr.substring(5, 6);
-		}else if(dateStr.length() == 7){
-			yearStr = dateStr.substring(0, 4);
-			monStr = dateStr.substring(4, 5);
-			dayStr = dateStr.substring(5, 7);
-		}else if(dateStr.length() == 8){
-			yearStr = dateStr.substring(0, 4);
-			monStr = dateStr.substring(4, 6);
-			dayStr = dateStr.substring(6, 8);
-		}
-		
-		if(2012 != Integer.parseInt(yearStr)){
-			return null;
-		}else{
-			int monInt = Integer.parseInt(monStr);
-			if(monInt<6 || monInt>7){
-				return null;
-			}else{
-				return yearStr+"-"+monStr+"-"+dayStr;
-			}
-		}		
-	}
-	//	/12/0702/
-	private static  String convertDate_1(String rawStr) {
-		
-		String yearStr = "2012";
-		String monStr = rawStr.substring(4, 6);
-		String dayStr = rawStr.substring(6, 8);
-		
-		int monInt = Integer.parseInt(monStr);
-		if(monInt<6 || monInt>7){
-			return null;
-		}else{
-			return yearStr+"-"+monStr+"-"+dayStr;
-		}		
-	}
-	//	/2012/06/11/
-	private static  String convertDate_2(String rawStr) {
-		
-		String yearStr = rawStr.substring(1, 5);
-		String monStr = rawStr.substring(6, 8);
-		String dayStr = rawStr.substring(9, 11);
-		
-		if(2012 != Integer.parseInt(yearStr)){
-			return null;
-		}else{
-			int monInt = Integer.parseInt(monStr);
-			if(monInt<6 || monInt>7){
-				return null;
-			}else{
-				return yearStr+"-"+monStr+"-"+dayStr;
-			}
-		}		
-	}
-	//	/2012/0311/
-	private static  String convertDate_3(String rawStr) {
-		
-		String yearStr = rawStr.substring(1, 5);
-		String monStr = rawStr.substring(6, 8);
-		String dayStr = rawStr.substring(8, 10);
-		
-		if(2012 != Integer.parseInt(yearStr)){
-			return null;
-		}else{
-			int monInt = Integer.parseInt(monStr);
-			if(monInt<6 || monInt>7){
-				return null;
-			}else{
-				return yearStr+"-"+monStr+"-"+dayStr;
-			}
-		}		
-	}
-	//	detail_2012_06/12/
-	private static  String convertDate_5(String rawStr) {
-		
-		String yearStr = rawStr.substring(7, 11);
-		String monStr = rawStr.substring(12, 14);
-		String dayStr = rawStr.substring(15, 17);
-		
-		if(2012 != Integer.parseInt(yearStr)){
-			return null;
-		}else{
-			int monInt = Integer.parseInt(monStr);
-			if(monInt<6 || monInt>7){
-				return null;
-			}else{
-				return yearStr+"-"+monStr+"-"+dayStr;
-			}
-		}		
-	}
-	//	20120611.html
-	private static  String convertDate_6(String rawStr) {
-		String dateStr = rawStr.substring(0, rawStr.length()-1);
-		
-		String yearStr = dateStr.substring(0, 4);
-		String monStr = dateStr.substring(4, 6);
-		String dayStr = dateStr.substring(6, 8);
-		
-		if(2012 != Integer.parseInt(yearStr)){
-			return null;
-		}else{
-			int monInt = Integer.parseInt(monStr);
-			if(monInt<6 || monInt>7){
-				return null;
-			}else{
-				return yearStr+"-"+monStr+"-"+dayStr;
-			}
-		}		
+		return null;
 	}
 	
 	//test
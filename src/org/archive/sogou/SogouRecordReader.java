@@ -0,0 +1,67 @@
+package org.archive.sogou;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import org.archive.util.io.CodePointFilter;
+
+/**
+ * Function:
+ *
+ * Reads the raw records of SogouCA, i.e., <doc>...</doc>, one by one from an (incrementally decoded) reader.
+ * Each line is cleaned before being appended, and only the current record is kept in memory.
+ *
+ * **/
+
+public class SogouRecordReader {
+
+	//for filtering the noisy characters and escaping '&'
+	private CodePointFilter lineFilter = CodePointFilter.newNoisyCharacterFilter();
+
+	private BufferedReader reader;
+
+	private StringBuffer docBuffer = new StringBuffer();
+
+	public SogouRecordReader(BufferedReader reader){
+		this.reader = reader;
+	}
+
+	/**
+	 * @return the next record with its lines concatenated, or null if the input is exhausted
+	 * **/
+	public String nextRecord() throws IOException{
+
+		String line = null;
+		while(null != (line=reader.readLine())){
+
+			if(0 == line.length()){
+				continue;
+			}
+
+			//filter unnormal characters, and escape '&' due to different inner way of expression
+			line = lineFilter.filter(line);
+
+			//a new record starts before the previous one is closed, i.e., a truncated record that could not be parsed anyway
+			if(docBuffer.length()>0 && line.startsWith("<doc>")){
+				System.err.println("Unclosed record skipped!");
+				docBuffer.delete(0, docBuffer.length());
+			}
+
+			docBuffer.append(line);
+
+			if(line.indexOf("</doc>") >= 0){
+				String docString = docBuffer.toString();
+				//new
+				docBuffer.delete(0, docBuffer.length());
+
+				return docString;
+			}
+		}
+
+		return null;
+	}
+
+	public void close() throws IOException{
+		reader.close();
+	}
+}
@@ -1,8 +1,12 @@
 package org.archive.sogou;
 
 import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
 
+import de.unihd.dbs.sogou.TaggingOptions;
 import de.unihd.dbs.sogou.TemSogouTagger;
+import de.unihd.dbs.uima.reader.sogou.FilePartition;
 
 
 /**
@@ -18,72 +22,190 @@ import de.unihd.dbs.sogou.TemSogouTagger;
 
 public class TemChTagger {
 	
-	//case-1: 	-p oriFile outputDir	
-	//e.g., -p collectionTest/news_tensite_xml.smarty.dat collectionTest/NoTagVersion/
+	//the options taking a value and the flags of each case, see below
+	private static final String [] PREPROCESS_OPTIONS = {"threads", "dates", "dedup"};
+	private static final String [] PREPROCESS_FLAGS = {};
+	private static final String [] TAGGING_OPTIONS = {"threads", "prefetch", "partition", "docBudget", "sentenceBudget", "metricsInterval", "sentenceCache", "maxSentenceLength"};
+	private static final String [] TAGGING_FLAGS = {"resume", "batch", "sentenceScanner", "lazyPos", "ruleAutomaton"};
+	//the options whose value has to be an integer
+	private static final String [] NUMERIC_OPTIONS = {"threads", "prefetch", "docBudget", "sentenceBudget", "metricsInterval", "sentenceCache", "maxSentenceLength"};
+	
+	//case-1: 	-p oriFile outputDir [-threads N] [-dates yyyyMMdd-yyyyMMdd] [-dedup skip|link]	
+	//e.g., -p collectionTest/news_tensite_xml.smarty.dat collectionTest/NoTagVersion/ -threads 4 -dates 20120601-20120731 -dedup link
 	
 	/**
 	* This setting performs pre-process required for Temporalia-Style tagging
 	* 
 	* @param oriFile the original raw data file, e.g., news_tensite_xml.smarty.dat or news_tensite_xml.dat
 	* @param outputDir the output directory
+	* @param threads (optional) the number of threads used for pre-processing, 1 by default
+	* @param dates (optional) the accepted range of publication dates, 20120601-20120731 by default
+	* @param dedup (optional) near-duplicate documents are removed (skip) or linked to the canonical document (link), no detection by default
 	* 
 	* **/
 	
 	
-	//case-2:		-t NoTagFileDir	TagFileDir	
-	//e.g., -t collectionTest/NoTagVersion/ collectionTest/TagVersion/
+	//case-2:		-t NoTagFileDir	TagFileDir [-threads N] [-prefetch K] [-partition i/n|@listFile|glob] [-resume] [-docBudget ms] [-sentenceBudget ms] [-metricsInterval s] [-batch] [-sentenceCache N] [-maxSentenceLength n] [-sentenceScanner] [-lazyPos] [-ruleAutomaton]	
+	//e.g., -t collectionTest/NoTagVersion/ collectionTest/TagVersion/ -threads 4 -prefetch 1000 -partition 0/4
 	/**
 	* This setting performs Temporalia-Style tagging given the files generated as above
 	* 
 	* @param NoTagFileDir the directory of the non-tagged files generated as case-1
 	* @param TagFileDir:	the output directory, i.e., the directory to store the tagged files
+	* @param threads (optional) the number of threads used for tagging, 1 by default; the Stanford models are loaded once and shared by the threads
+	* @param prefetch (optional) the number of documents read ahead by a background thread, 0 (no prefetching) by default
+	* @param partition (optional) the slice of the non-tagged files to be tagged, all files by default, i.e., i/n (every n-th file sorted by name from the i-th one on),
+	* 				a list file prefixed with @ (the files listed in it) or a glob of file names; the output files are named after the slice
+	* @param resume (optional) continue a crashed run from its checkpoint, i.e., the finished output files are kept and the unfinished one is rewritten
+	* @param docBudget, sentenceBudget (optional) the time budgets in milliseconds of tagging a document and a sentence, no limit by default;
+	* 				a document over budget is tagged again in short chunks, and moved to the quarantine file SogouCA_TemQuarantined_*.xml if it is still over budget
+	* @param metricsInterval (optional) the seconds between two summary lines of the throughput and the stage latencies, 0 (none) by default
+	* @param batch (optional) run the segmenter, the pos tagger and the ner tagger one after another over all the sentences of a document, rather than per sentence
+	* @param sentenceCache (optional) the number of recent sentences whose segmentation, pos and ner results are reused for recurring sentences, e.g., bylines; 0 (no caching) by default
+	* @param maxSentenceLength (optional) sentences longer than this number of characters are tagged in chunks, which bounds the cost of the CRF segmenter and ner tagger; no limit by default
+	* @param sentenceScanner (optional) split the sentences without cutting decimals (e.g., 3.5%), urls, abbreviations and ellipses, and with their closing quotes
+	* @param lazyPos (optional) pos tag only the sentences of the timexes that need it, e.g., for the tense of a date without a year; the output is the same
+	* @param ruleAutomaton (optional) match the HeidelTime rules of a type in one scan of each sentence instead of one regular expression search per rule; the output is the same
 	*
 	* **/
 	
 	public static void main(String [] args){
 		
-		
-		if(args.length != 3){
+		if(args.length < 3 || !(args[0].endsWith("p") || args[0].endsWith("t"))){
 			
 			System.err.println("Parameter setting error!");
 			
-		}else{
+		}else if(args[0].endsWith("p")){
 			//e.g., calling
 			//-p collectionTest/news_tensite_xml.smarty.dat collectionTest/NoTagVersion/
 			
-			if(args[0].endsWith("p")){
+			int threadNum = 1;
+			
+			try {
+				HashMap<String, String> options = parseOptions(args, 3, PREPROCESS_OPTIONS, PREPROCESS_FLAGS);
 				
-				Preprocesor.toTemporaliaStyle(args[1], args[2]);
+				if(options.containsKey("threads")){
+					threadNum = Integer.parseInt(options.get("threads"));
+				}
+				if(options.containsKey("dates")){
+					Preprocesor.setDateScanner(UrlDateScanner.parse(options.get("dates")));
+				}
+				if(options.containsKey("dedup")){
+					Preprocesor.setDedupMode(NearDuplicateDetector.Mode.valueOf(options.get("dedup").toUpperCase()));
+				}
+			} catch (IllegalArgumentException e) {
+				System.err.println("Parameter setting error! "+e.getMessage());
+				return;
+			}
+			
+			ParallelPreprocesor.toTemporaliaStyle(args[1], args[2], threadNum);
+			
+		}else{
+			//e.g., calling -t collectionTest/NoTagVersion/ collectionTest/TagVersion/
+			
+			//the settings are checked before the error stream is redirected to the log, so that a wrong one is reported on the console
+			TaggingOptions taggingOptions = new TaggingOptions();
+			
+			try {
+				HashMap<String, String> options = parseOptions(args, 3, TAGGING_OPTIONS, TAGGING_FLAGS);
 				
-			}else if(args[0].endsWith("t")){
-				//e.g., calling -t collectionTest/NoTagVersion/ collectionTest/TagVersion/
+				if(options.containsKey("threads")){
+					taggingOptions.threadNum = Integer.parseInt(options.get("threads"));
+				}
+				if(options.containsKey("prefetch")){
+					taggingOptions.prefetchSize = Integer.parseInt(options.get("prefetch"));
+				}
+				if(options.containsKey("partition")){
+					taggingOptions.partition = FilePartition.parse(options.get("partition"));
+				}
+				if(options.containsKey("docBudget")){
+					taggingOptions.docBudgetMillis = Long.parseLong(options.get("docBudget"));
+				}
+				if(options.containsKey("sentenceBudget")){
+					taggingOptions.sentenceBudgetMillis = Long.parseLong(options.get("sentenceBudget"));
+				}
+				if(options.containsKey("metricsInterval")){
+					taggingOptions.metricsIntervalSeconds = Long.parseLong(options.get("metricsInterval"));
+				}
+				if(options.containsKey("sentenceCache")){
+					taggingOptions.sentenceCacheSize = Integer.parseInt(options.get("sentenceCache"));
+				}
+				if(options.containsKey("maxSentenceLength")){
+					taggingOptions.maxSentenceLength = Integer.parseInt(options.get("maxSentenceLength"));
+				}
+				taggingOptions.resume = options.containsKey("resume");
+				taggingOptions.batchSentences = options.containsKey("batch");
+				taggingOptions.boundaryScanner = options.containsKey("sentenceScanner");
+				taggingOptions.lazyPartOfSpeech = options.containsKey("lazyPos");
+				taggingOptions.ruleAutomaton = options.containsKey("ruleAutomaton");
+			} catch (IllegalArgumentException e) {
+				System.err.println("Parameter setting error! "+e.getMessage());
+				return;
+			}
+			
+			try {
+
+				PrintStream logPrinter = new PrintStream("tag_log.txt");
+				System.setErr(logPrinter);
 				
 				try {
-
-					PrintStream logPrinter = new PrintStream("tag_log.txt");
-					System.setErr(logPrinter);
-					
-					try {
-						TemSogouTagger temSogouTagger = new TemSogouTagger(args[1], args[2]);
-						temSogouTagger.run();
-					} catch (Exception ee) {
-						// TODO: handle exception
-						ee.printStackTrace();
-					}					
-					
-					logPrinter.flush();
-					logPrinter.close();
-					
-				} catch (Exception e) {
+					TemSogouTagger temSogouTagger = new TemSogouTagger(args[1], args[2], taggingOptions);
+					temSogouTagger.run();
+				} catch (Exception ee) {
 					// TODO: handle exception
-					e.printStackTrace();
-				}
-			}else {
-				System.err.println("Parameter setting error!");
+					ee.printStackTrace();
+				}					
+				
+				logPrinter.flush();
+				logPrinter.close();
+				
+			} catch (Exception e) {
+				// TODO: handle exception
+				e.printStackTrace();
+			}
+		}
+		
+	}
+	
+	/**
+	 * parse the optional settings following the required arguments, i.e., pairs like "-threads 4" and flags like "-resume" (or "--resume");
+	 * a declared option always takes the next argument as its value, even if it starts with "-", e.g., "-docBudget -1",
+	 * and a flag never takes a value
+	 * 
+	 * @return the settings keyed by the name without "-", a flag maps to "true"
+	 * @throws IllegalArgumentException if a name is not declared, an option lacks its value, or a numeric option's value is not an integer
+	 * **/
+	private static HashMap<String, String> parseOptions(String [] args, int from, String [] optionNames, String [] flagNames){
+		
+		HashMap<String, String> options = new HashMap<String, String>();
+		
+		for(int i=from; i<args.length; i++){
+			if(!args[i].startsWith("-")){
+				throw new IllegalArgumentException("Unexpected argument: "+args[i]);
 			}
 			
+			String name = args[i].replaceFirst("^-+", "");
+			if(Arrays.asList(flagNames).contains(name)){
+				options.put(name, "true");
+			}else if(Arrays.asList(optionNames).contains(name)){
+				if(i+1 == args.length){
+					throw new IllegalArgumentException("Missing value of -"+name);
+				}
+				String value = args[++i];
+				if(Arrays.asList(NUMERIC_OPTIONS).contains(name)){
+					try {
+						Long.parseLong(value);
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Illegal value of -"+name+": "+value);
+					}
+				}
+				options.put(name, value);
+			}else{
+				throw new IllegalArgumentException("Unknown option: "+args[i]);
+			}
 		}
 		
+		return options;
 	}
 
 }
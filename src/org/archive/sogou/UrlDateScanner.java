@@ -0,0 +1,287 @@
+package org.archive.sogou;
+
+/**
+ * Function:
+ *
+ * Extracts the publication date from a url in one left-to-right walk, replacing the six regular expressions used before.
+ * The recognized layouts in the order of priority:
+ * (1)	/12/0702/		i.e., /yy/MMdd/ where 20yy is a year within the accepted range
+ * (2)	/2012/03/11/
+ * (3)	/2012/0311/
+ * (4)	/20120311/	or /2012324/	or	/201233/
+ * (5)	detail_2012_06/12/
+ * (6)	20120611.html	i.e., yyyyMMdd followed by any character, where yyyy is a year within the accepted range
+ *
+ * As before, the layout of the highest priority that occurs decides, and its leftmost occurrence is used,
+ * the document is refused if that date is not a valid calendar date (e.g., 2012-06-45) or is out of the accepted range.
+ *
+ * An instance keeps no state while scanning, thus it can be shared by threads.
+ *
+ * **/
+
+public class UrlDateScanner {
+
+	//the default accepted range, i.e., June and July of 2012
+	public static final int DEFAULT_FROM_DATE = 20120601;
+	public static final int DEFAULT_TO_DATE = 20120731;
+
+	private static final int LAYOUT_NUM = 6;
+
+	//accepted range as yyyyMMdd, both inclusive
+	private int fromDate;
+	private int toDate;
+
+	private int fromYear;
+	private int toYear;
+
+	public UrlDateScanner(){
+		this(DEFAULT_FROM_DATE, DEFAULT_TO_DATE);
+	}
+
+	public UrlDateScanner(int fromDate, int toDate){
+		if(fromDate > toDate){
+			throw new IllegalArgumentException("Illegal date range: "+fromDate+"-"+toDate);
+		}
+
+		this.fromDate = fromDate;
+		this.toDate = toDate;
+
+		this.fromYear = fromDate/10000;
+		this.toYear = toDate/10000;
+	}
+
+	/**
+	 * @param range e.g., 20120601-20120731
+	 * **/
+	public static UrlDateScanner parse(String range){
+		int index = range.indexOf('-');
+		if(index < 0){
+			throw new IllegalArgumentException("Illegal date range: "+range);
+		}
+		return new UrlDateScanner(Integer.parseInt(range.substring(0, index).trim()), Integer.parseInt(range.substring(index+1).trim()));
+	}
+
+	/**
+	 * @return the publication date as ****-**-**, the digits are kept as they are in the url, e.g., 2012-6-3 for /201263/;
+	 * or null if no layout occurs or the date is out of the accepted range
+	 * **/
+	public String scan(String url){
+
+		int n = url.length();
+
+		//the decisive layout found so far and its position
+		int layout = LAYOUT_NUM+1;
+		int start = -1;
+
+		for(int i=0; i<n && layout>1; i++){
+			//only the layouts of a higher priority than the found one matter
+			for(int k=1; k<layout; k++){
+				if(matches(url, i, k)){
+					layout = k;
+					start = i;
+					break;
+				}
+			}
+		}
+
+		if(layout > LAYOUT_NUM){
+			return null;
+		}
+
+		return convert(url, start, layout);
+	}
+
+	/**
+	 * whether the given layout occurs at the given position
+	 * **/
+	private boolean matches(String url, int i, int layout){
+
+		int n = url.length();
+
+		switch (layout) {
+			case 1:
+				//	/12/0702/
+				return i+9<=n && url.charAt(i)=='/' && digits(url, i+1, 2) && url.charAt(i+3)=='/'
+						&& digits(url, i+4, 4) && url.charAt(i+8)=='/' && inYearRange(2000+number(url, i+1, 2));
+			case 2:
+				//	/2012/03/11/
+				return i+12<=n && url.charAt(i)=='/' && digits(url, i+1, 4) && url.charAt(i+5)=='/'
+						&& digits(url, i+6, 2) && url.charAt(i+8)=='/' && digits(url, i+9, 2) && url.charAt(i+11)=='/';
+			case 3:
+				//	/2012/0311/
+				return i+11<=n && url.charAt(i)=='/' && digits(url, i+1, 4) && url.charAt(i+5)=='/'
+						&& digits(url, i+6, 4) && url.charAt(i+10)=='/';
+			case 4:
+				//	/20120311/	or /2012324/	or	/201233/
+				if(url.charAt(i) != '/'){
+					return false;
+				}
+				int len = digitRun(url, i+1);
+				return len>=6 && len<=8 && i+1+len<n && url.charAt(i+1+len)=='/';
+			case 5:
+				//	detail_2012_06/12/
+				return i+18<=n && url.startsWith("detail_", i) && digits(url, i+7, 4) && url.charAt(i+11)=='_'
+						&& digits(url, i+12, 2) && url.charAt(i+14)=='/' && digits(url, i+15, 2) && url.charAt(i+17)=='/';
+			case 6:
+				//	20120611.html
+				return i+9<=n && digits(url, i, 8) && !isLineTerminator(url.charAt(i+8)) && inYearRange(number(url, i, 4));
+			default:
+				return false;
+		}
+	}
+
+	private String convert(String url, int i, int layout){
+
+		//start and length of year, month, day
+		int y, yLen=4, m, mLen=2, d, dLen=2;
+
+		switch (layout) {
+			case 1:
+				y = i+1; yLen = 2; m = i+4; d = i+6;
+				break;
+			case 2:
+				y = i+1; m = i+6; d = i+9;
+				break;
+			case 3:
+				y = i+1; m = i+6; d = i+8;
+				break;
+			case 4:
+				int len = digitRun(url, i+1);
+				y = i+1;
+				if(len == 6){
+					m = i+5; mLen = 1; d = i+6; dLen = 1;
+				}else if(len == 7){
+					m = i+5; mLen = 1; d = i+6;
+				}else{
+					m = i+5; d = i+7;
+				}
+				break;
+			case 5:
+				y = i+7; m = i+12; d = i+15;
+				break;
+			default:
+				y = i; m = i+4; d = i+6;
+				break;
+		}
+
+		int year = number(url, y, yLen);
+		if(2 == yLen){
+			year += 2000;
+		}
+
+		int month = number(url, m, mLen);
+		int day = number(url, d, dLen);
+		if(!isValidDate(year, month, day)){
+			return null;
+		}
+
+		int date = year*10000 + month*100 + day;
+		if(date<fromDate || date>toDate){
+			return null;
+		}
+
+		StringBuilder dateStr = new StringBuilder(10);
+		if(2 == yLen){
+			dateStr.append(year);
+		}else{
+			dateStr.append(url, y, y+yLen);
+		}
+		dateStr.append('-').append(url, m, m+mLen).append('-').append(url, d, d+dLen);
+
+		return dateStr.toString();
+	}
+
+	//month 1-12 and a day of that month, e.g., 2012-02-29 but not 2013-02-29
+	private static boolean isValidDate(int year, int month, int day){
+		if(month<1 || month>12 || day<1){
+			return false;
+		}
+
+		int monthLength;
+		if(2 == month){
+			monthLength = (0==year%4 && (0!=year%100 || 0==year%400)) ? 29 : 28;
+		}else if(4==month || 6==month || 9==month || 11==month){
+			monthLength = 30;
+		}else{
+			monthLength = 31;
+		}
+
+		return day <= monthLength;
+	}
+
+	private boolean inYearRange(int year){
+		return year>=fromYear && year<=toYear;
+	}
+
+	private static boolean digits(String url, int from, int len){
+		for(int i=from; i<from+len; i++){
+			char c = url.charAt(i);
+			if(c<'0' || c>'9'){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int digitRun(String url, int from){
+		int i = from;
+		while(i<url.length() && url.charAt(i)>='0' && url.charAt(i)<='9'){
+			i++;
+		}
+		return i-from;
+	}
+
+	private static int number(String url, int from, int len){
+		int v = 0;
+		for(int i=from; i<from+len; i++){
+			v = v*10 + (url.charAt(i)-'0');
+		}
+		return v;
+	}
+
+	//the characters that '.' of java.util.regex does not match by default
+	private static boolean isLineTerminator(char c){
+		return c=='\n' || c=='\r' || c=='\u0085' || c=='\u2028' || c=='\u2029';
+	}
+
+	//checks the layouts and the refused dates, the mismatches are printed
+	public static void main(String []args){
+		UrlDateScanner scanner = new UrlDateScanner();
+		String [][] cases = {
+				{"http://a.com/12/0702/x.html", "2012-07-02"},
+				{"http://a.com/2012/06/11/x.html", "2012-06-11"},
+				{"http://a.com/2012/0611/x.html", "2012-06-11"},
+				{"http://a.com/20120611/x.html", "2012-06-11"},
+				{"http://a.com/2012624/x.html", "2012-6-24"},
+				{"http://a.com/201263/x.html", "2012-6-3"},
+				{"http://a.com/detail_2012_06/12/x.html", "2012-06-12"},
+				{"http://a.com/x/20120611.html", "2012-06-11"},
+				//not a calendar date
+				{"http://a.com/20120645/x.html", null},
+				{"http://a.com/2012/0645/x.html", null},
+				{"http://a.com/2012/06/00/x.html", null},
+				{"http://a.com/2012/13/01/x.html", null},
+				{"http://a.com/2012/06/31/x.html", null},
+				//out of the accepted range
+				{"http://a.com/2012/05/31/x.html", null},
+				{"http://a.com/2012/08/01/x.html", null},
+				{"http://a.com/x/y.html", null}};
+
+		int mismatches = 0;
+		for(String [] c: cases){
+			String found = scanner.scan(c[0]);
+			if(null==found ? null!=c[1] : !found.equals(c[1])){
+				mismatches++;
+				System.out.println("MISMATCH of "+c[0]+":\t"+found+"\texpected:\t"+c[1]);
+			}
+		}
+
+		UrlDateScanner leapScanner = new UrlDateScanner(20120101, 20131231);
+		if(!"2012-02-29".equals(leapScanner.scan("http://a.com/2012/02/29/x.html")) || null != leapScanner.scan("http://a.com/2013/02/29/x.html")){
+			mismatches++;
+			System.out.println("MISMATCH of February 29");
+		}
+
+		System.out.println((cases.length+1)+" cases, "+mismatches+" mismatches");
+	}
+}
@@ -0,0 +1,162 @@
+package org.archive.util.io;
+
+/**
+ * Function:
+ *
+ * Cleans text by looking up each character in a precomputed table of actions, i.e., keep, drop, or XML-escape,
+ * instead of matching large character-class regular expressions.
+ *
+ * The tables are built once and shared, while each instance owns a reusable buffer,
+ * thus an instance should not be shared by threads.
+ *
+ * Characters outside the BMP are represented by surrogates, which all tables drop,
+ * i.e., the same as the character classes replaced, which match no supplementary code point.
+ *
+ * **/
+
+public class CodePointFilter {
+
+	private static final byte KEEP = 0;
+	private static final byte DROP = 1;
+	//only '&' is escaped, as by the former replaceAll("&", "&amp;"); '<' and '>' are kept as they are
+	private static final byte ESCAPE = 2;
+
+	/**
+	 * drops the characters illegal in XML 1.0 and escapes '&',
+	 * i.e., the same as replaceAll("[^\\u0009\\u000A\\u000D\\u0020-\\uD7FF\\uE000-\\uFFFD]+", "") then replaceAll("&", "&amp;")
+	 * **/
+	private static final byte [] NOISY_ACTIONS = newNoisyActions();
+
+	/**
+	 * keeps only the digits, letters, CJK unified ideographs and the punctuations ： 。 ；  ， ： “ ”（ ） 、 ？ 《 》
+	 * **/
+	private static final byte [] CONTENT_ACTIONS = newContentActions();
+
+	private byte [] actions;
+
+	private StringBuilder buffer = new StringBuilder();
+
+	private CodePointFilter(byte [] actions){
+		this.actions = actions;
+	}
+
+	/**
+	 * the filter used for each line of the raw and the pre-processed files
+	 * **/
+	public static CodePointFilter newNoisyCharacterFilter(){
+		return new CodePointFilter(NOISY_ACTIONS);
+	}
+
+	/**
+	 * the filter used for the content of each document
+	 * **/
+	public static CodePointFilter newContentFilter(){
+		return new CodePointFilter(CONTENT_ACTIONS);
+	}
+
+	/**
+	 * @return a filter that drops the line breaks as well, i.e., joins the lines as reading them one by one and concatenating them does
+	 * **/
+	public CodePointFilter withoutLineBreaks(){
+		byte [] joinedActions = actions.clone();
+		joinedActions['\n'] = DROP;
+		joinedActions['\r'] = DROP;
+		return new CodePointFilter(joinedActions);
+	}
+	
+	/**
+	 * @return the filtered text, or the text itself if no character is changed
+	 * **/
+	public String filter(String text){
+
+		int n = text.length();
+
+		//the common case, i.e., nothing to change, costs no allocation
+		int i = 0;
+		while(i<n && KEEP==actions[text.charAt(i)]){
+			i++;
+		}
+		if(i == n){
+			return text;
+		}
+
+		buffer.setLength(0);
+		buffer.append(text, 0, i);
+		filter(text, i, n, buffer);
+
+		return buffer.toString();
+	}
+
+	/**
+	 * appends the filtered text to the given buffer
+	 * **/
+	public void filter(CharSequence text, StringBuilder out){
+		filter(text, 0, text.length(), out);
+	}
+
+	private void filter(CharSequence text, int from, int to, StringBuilder out){
+
+		for(int i=from; i<to; i++){
+
+			char c = text.charAt(i);
+
+			switch (actions[c]) {
+				case KEEP:
+					out.append(c);
+					break;
+				case ESCAPE:
+					out.append("&amp;");
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	private static byte [] newNoisyActions(){
+
+		byte [] actions = newActions(DROP);
+
+		actions['\u0009'] = KEEP;
+		actions['\n'] = KEEP;
+		actions['\r'] = KEEP;
+		setRange(actions, ' ', '\uD7FF', KEEP);
+		setRange(actions, '\uE000', '\uFFFD', KEEP);
+
+		actions['&'] = ESCAPE;
+
+		return actions;
+	}
+
+	private static byte [] newContentActions(){
+
+		byte [] actions = newActions(DROP);
+
+		setRange(actions, '\uFF10', '\uFF19', KEEP);
+		setRange(actions, 'a', 'z', KEEP);
+		setRange(actions, 'A', 'Z', KEEP);
+		setRange(actions, '0', '9', KEEP);
+		setRange(actions, '\u4E00', '\u9FFF', KEEP);
+
+		char [] punctuations = {'\u3002', '\uFF1B', '\uFF0C', '\uFF1A', '\u201C', '\u201D', '\uFF08', '\uFF09', '\u3001', '\uFF1F', '\u300A', '\u300B'};
+		for(char c: punctuations){
+			actions[c] = KEEP;
+		}
+
+		return actions;
+	}
+
+	private static byte [] newActions(byte defaultAction){
+		byte [] actions = new byte[Character.MAX_VALUE+1];
+		if(KEEP != defaultAction){
+			setRange(actions, Character.MIN_VALUE, Character.MAX_VALUE, defaultAction);
+		}
+		return actions;
+	}
+
+	private static void setRange(byte [] actions, char from, char to, byte action){
+		for(int c=from; c<=to; c++){
+			actions[c] = action;
+		}
+	}
+}
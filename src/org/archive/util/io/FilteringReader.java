@@ -0,0 +1,76 @@
+package org.archive.util.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Function:
+ *
+ * Applies a CodePointFilter to a character stream chunk by chunk, optionally enclosed by a prefix and a suffix,
+ * e.g., "<add>" and "</add>" for reading a file of <doc> elements as one XML document without loading it as a whole.
+ *
+ * **/
+
+public class FilteringReader extends Reader {
+
+	private Reader in;
+	private CodePointFilter filter;
+	private String suffix;
+
+	private char [] rawBuffer = new char[8192];
+
+	//the filtered characters not yet read
+	private StringBuilder pending = new StringBuilder();
+	private int pendingPos = 0;
+
+	private boolean exhausted = false;
+
+	public FilteringReader(Reader in, CodePointFilter filter){
+		this(in, filter, "", "");
+	}
+
+	public FilteringReader(Reader in, CodePointFilter filter, String prefix, String suffix){
+		this.in = in;
+		this.filter = filter;
+		this.suffix = suffix;
+
+		pending.append(prefix);
+	}
+
+	@Override
+	public int read(char [] cbuf, int off, int len) throws IOException {
+
+		if(0 == len){
+			return 0;
+		}
+
+		while(pendingPos >= pending.length()){
+			if(exhausted){
+				return -1;
+			}
+
+			pending.setLength(0);
+			pendingPos = 0;
+
+			int n = in.read(rawBuffer, 0, rawBuffer.length);
+			if(n < 0){
+				exhausted = true;
+				pending.append(suffix);
+			}else{
+				filter.filter(CharBuffer.wrap(rawBuffer, 0, n), pending);
+			}
+		}
+
+		int k = Math.min(len, pending.length()-pendingPos);
+		pending.getChars(pendingPos, pendingPos+k, cbuf, off);
+		pendingPos += k;
+
+		return k;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,112 @@
+package org.archive.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Function:
+ *
+ * A lock-free histogram of non-negative long values, e.g., latencies in microseconds or document lengths in characters,
+ * for percentiles such as p50/p95/p99.
+ *
+ * The buckets are log-linear, i.e., each power of two is split into 8 equal buckets,
+ * thus a percentile is accurate within 1/8 of its value, and a value is recorded by two atomic additions without allocation.
+ *
+ * **/
+
+public class Histogram {
+
+	//each power of two is split into 2^subBits buckets
+	private static final int subBits = 3;
+	private static final int subCount = 1<<subBits;
+	//the values below this are counted exactly, one bucket per value
+	private static final int linearLimit = 2*subCount;
+
+	private final AtomicLongArray bucketCounts = new AtomicLongArray(linearLimit+(64-subBits-1)*subCount);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	//raised atomically, i.e., a concurrent smaller value never overwrites a larger one
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long value){
+		if(value < 0){
+			value = 0;
+		}
+
+		bucketCounts.incrementAndGet(bucketIndex(value));
+		count.increment();
+		sum.add(value);
+		long currentMax;
+		while(value > (currentMax=max.get()) && !max.compareAndSet(currentMax, value)){
+			//raised by another thread in between, compared again
+		}
+	}
+
+	public long getCount(){
+		return count.sum();
+	}
+
+	public long getSum(){
+		return sum.sum();
+	}
+
+	public long getMax(){
+		return max.get();
+	}
+
+	public double getMean(){
+		long n = count.sum();
+		return 0==n ? 0 : (double)sum.sum()/n;
+	}
+
+	/**
+	 * @param quantile e.g., 0.95 for p95
+	 * @return the highest value of the bucket holding the given quantile, 0 if nothing is recorded
+	 * **/
+	public long getPercentile(double quantile){
+		long total = 0;
+		for(int i=0; i<bucketCounts.length(); i++){
+			total += bucketCounts.get(i);
+		}
+		if(0 == total){
+			return 0;
+		}
+
+		long rank = Math.max(1, (long)Math.ceil(quantile*total));
+
+		long maxValue = max.get();
+		long cumulated = 0;
+		for(int i=0; i<bucketCounts.length(); i++){
+			cumulated += bucketCounts.get(i);
+			if(cumulated >= rank){
+				return Math.min(bucketUpperBound(i), maxValue);
+			}
+		}
+
+		return maxValue;
+	}
+
+	static int bucketIndex(long value){
+		if(value < linearLimit){
+			return (int)value;
+		}
+
+		int exponent = 63-Long.numberOfLeadingZeros(value);
+		int sub = (int)(value>>>(exponent-subBits)) & (subCount-1);
+
+		return linearLimit+(exponent-subBits-1)*subCount+sub;
+	}
+
+	static long bucketUpperBound(int index){
+		if(index < linearLimit){
+			return index;
+		}
+
+		int exponent = (index-linearLimit)/subCount+subBits+1;
+		int sub = (index-linearLimit)%subCount;
+		long lower = ((long)(subCount+sub))<<(exponent-subBits);
+
+		return lower+(1L<<(exponent-subBits))-1;
+	}
+}
@@ -0,0 +1,229 @@
+package org.archive.util.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Function:
+ *
+ * The throughput and the stage latencies of a document processing pipeline, shared by all its threads.
+ *
+ * (1) a component gets its Stage once, e.g., getStage("segmentation"), and records the latency of each document;
+ * (2) the end of the pipeline records each finished document with its length, for docs/sec and chars/sec;
+ * (3) the figures are exposed as MBeans under org.archive.util.metrics, e.g., for jconsole,
+ * 	   and optionally printed as a periodic summary line.
+ *
+ * Recording costs a few atomic additions, i.e., it is meant to be left on.
+ *
+ * **/
+
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+	private static final String domain = "org.archive.util.metrics";
+
+	private final String name;
+	private final CopyOnWriteArrayList<Stage> stageList = new CopyOnWriteArrayList<Stage>();
+
+	private final LongAdder docCount = new LongAdder();
+	private final LongAdder charCount = new LongAdder();
+	private final Histogram docLengthHistogram = new Histogram();
+
+	private volatile long startNanos = System.nanoTime();
+	//0 while running
+	private volatile long stopNanos = 0;
+
+	private boolean registered = false;
+	private Thread reportThread = null;
+
+	/**
+	 * @param name distinguishes the MBeans of this pipeline, e.g., TemSogouTagger
+	 * **/
+	public PipelineMetrics(String name){
+		this.name = name;
+	}
+
+	/**
+	 * @return the stage of the given name, created if absent
+	 * **/
+	public synchronized Stage getStage(String stageName){
+		for(Stage stage: stageList){
+			if(stage.getName().equals(stageName)){
+				return stage;
+			}
+		}
+
+		Stage stage = new Stage(stageName);
+		stageList.add(stage);
+
+		if(registered){
+			register(stage);
+		}
+
+		return stage;
+	}
+
+	/**
+	 * @param length the number of characters of a finished document
+	 * **/
+	public void recordDocument(int length){
+		docCount.increment();
+		charCount.add(length);
+		docLengthHistogram.record(length);
+	}
+
+	/**
+	 * registers this object and its stages with the platform MBean server, replacing the ones of the same name, if any
+	 * **/
+	public synchronized void registerMBeans(){
+		try {
+			register(this, getObjectName("type=Pipeline,name="+ObjectName.quote(name)));
+			for(Stage stage: stageList){
+				register(stage);
+			}
+			registered = true;
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.err.println("MBean registration error!");
+		}
+	}
+
+	private void register(Stage stage){
+		try {
+			register(stage, getObjectName("type=Stage,pipeline="+ObjectName.quote(name)+",name="+ObjectName.quote(stage.getName())));
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.err.println("MBean registration error!");
+		}
+	}
+
+	/**
+	 * registers a further MBean of this pipeline, e.g., of a cache, replacing the one of the same type, if any
+	 * **/
+	public void registerMBean(String type, Object mbean){
+		try {
+			register(mbean, getObjectName("type="+type+",pipeline="+ObjectName.quote(name)));
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.err.println("MBean registration error!");
+		}
+	}
+
+	private static void register(Object mbean, ObjectName objectName) throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if(server.isRegistered(objectName)){
+			server.unregisterMBean(objectName);
+		}
+		server.registerMBean(mbean, objectName);
+	}
+
+	private static ObjectName getObjectName(String properties) throws Exception {
+		return new ObjectName(domain+":"+properties);
+	}
+
+	/**
+	 * starts measuring the rates, and prints the summary line periodically
+	 * @param reportIntervalMillis 0 for no periodic summary line
+	 * **/
+	public synchronized void start(final long reportIntervalMillis){
+		startNanos = System.nanoTime();
+		stopNanos = 0;
+
+		if(reportIntervalMillis<=0 || null!=reportThread){
+			return;
+		}
+
+		reportThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while(!Thread.currentThread().isInterrupted()){
+						Thread.sleep(reportIntervalMillis);
+						System.out.println(getSummary());
+					}
+				} catch (InterruptedException e) {
+					//stopped
+				}
+			}
+		}, "SogouMetrics");
+
+		reportThread.setDaemon(true);
+		reportThread.start();
+	}
+
+	/**
+	 * stops the periodic summary line, the rates are frozen as of now
+	 * **/
+	public synchronized void stop(){
+		stopNanos = System.nanoTime();
+
+		if(null != reportThread){
+			reportThread.interrupt();
+			reportThread = null;
+		}
+	}
+
+	public long getDocCount(){
+		return docCount.sum();
+	}
+
+	public long getCharCount(){
+		return charCount.sum();
+	}
+
+	public double getElapsedSeconds(){
+		long now = (0==stopNanos) ? System.nanoTime() : stopNanos;
+		return (now-startNanos)/1000000000.0;
+	}
+
+	public double getDocsPerSecond(){
+		double seconds = getElapsedSeconds();
+		return seconds<=0 ? 0 : docCount.sum()/seconds;
+	}
+
+	public double getCharsPerSecond(){
+		double seconds = getElapsedSeconds();
+		return seconds<=0 ? 0 : charCount.sum()/seconds;
+	}
+
+	public long getDocLengthP50(){
+		return docLengthHistogram.getPercentile(0.50);
+	}
+
+	public long getDocLengthP95(){
+		return docLengthHistogram.getPercentile(0.95);
+	}
+
+	public long getDocLengthP99(){
+		return docLengthHistogram.getPercentile(0.99);
+	}
+
+	public String[] getStageNames(){
+		ArrayList<String> nameList = new ArrayList<String>();
+		for(Stage stage: stageList){
+			nameList.add(stage.getName());
+		}
+		return nameList.toArray(new String[nameList.size()]);
+	}
+
+	/**
+	 * e.g., Metrics:	1200 docs	15.2 docs/s	24113 chars/s	length p50/p95/p99 1021/4605/9215	| read 0.1/0.4/1.2 ms | ...
+	 * where the stage latencies are p50/p95/p99 per document
+	 * **/
+	public String getSummary(){
+		StringBuffer summary = new StringBuffer();
+		summary.append(String.format(Locale.US, "Metrics:\t%d docs\t%.1f docs/s\t%.0f chars/s\tlength p50/p95/p99 %d/%d/%d",
+				getDocCount(), getDocsPerSecond(), getCharsPerSecond(), getDocLengthP50(), getDocLengthP95(), getDocLengthP99()));
+
+		for(Stage stage: stageList){
+			summary.append(String.format(Locale.US, "\t| %s %.1f/%.1f/%.1f ms",
+					stage.getName(), stage.getP50Millis(), stage.getP95Millis(), stage.getP99Millis()));
+		}
+
+		return summary.toString();
+	}
+}
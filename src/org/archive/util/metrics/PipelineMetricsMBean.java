@@ -0,0 +1,27 @@
+package org.archive.util.metrics;
+
+/**
+ * The JMX view of a PipelineMetrics, the rates are measured since start()
+ * **/
+public interface PipelineMetricsMBean {
+
+	public long getDocCount();
+
+	public long getCharCount();
+
+	public double getElapsedSeconds();
+
+	public double getDocsPerSecond();
+
+	public double getCharsPerSecond();
+
+	public long getDocLengthP50();
+
+	public long getDocLengthP95();
+
+	public long getDocLengthP99();
+
+	public String[] getStageNames();
+
+	public String getSummary();
+}
@@ -0,0 +1,59 @@
+package org.archive.util.metrics;
+
+/**
+ * Function:
+ *
+ * The latencies of one stage of a pipeline, e.g., segmentation, recorded by any number of threads.
+ *
+ * The latencies are kept in microseconds, a stage being expected to take at least that long.
+ *
+ * **/
+
+public class Stage implements StageMBean {
+
+	private final String name;
+	private final Histogram latencyHistogram = new Histogram();
+
+	Stage(String name){
+		this.name = name;
+	}
+
+	/**
+	 * @param nanos the latency of one unit of work, e.g., the difference of two System.nanoTime() calls
+	 * **/
+	public void record(long nanos){
+		latencyHistogram.record(nanos/1000L);
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	public long getCount(){
+		return latencyHistogram.getCount();
+	}
+
+	public double getTotalSeconds(){
+		return latencyHistogram.getSum()/1000000.0;
+	}
+
+	public double getMeanMillis(){
+		return latencyHistogram.getMean()/1000.0;
+	}
+
+	public double getP50Millis(){
+		return latencyHistogram.getPercentile(0.50)/1000.0;
+	}
+
+	public double getP95Millis(){
+		return latencyHistogram.getPercentile(0.95)/1000.0;
+	}
+
+	public double getP99Millis(){
+		return latencyHistogram.getPercentile(0.99)/1000.0;
+	}
+
+	public double getMaxMillis(){
+		return latencyHistogram.getMax()/1000.0;
+	}
+}
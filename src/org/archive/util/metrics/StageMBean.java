@@ -0,0 +1,23 @@
+package org.archive.util.metrics;
+
+/**
+ * The JMX view of a Stage, the latencies are per recorded unit of work, e.g., per document
+ * **/
+public interface StageMBean {
+
+	public String getName();
+
+	public long getCount();
+
+	public double getTotalSeconds();
+
+	public double getMeanMillis();
+
+	public double getP50Millis();
+
+	public double getP95Millis();
+
+	public double getP99Millis();
+
+	public double getMaxMillis();
+}
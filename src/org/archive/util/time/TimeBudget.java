@@ -0,0 +1,95 @@
+package org.archive.util.time;
+
+/**
+ * Function:
+ *
+ * The time budget of processing one document, and of each of its sentences, owned by the processing thread.
+ *
+ * The budget is enforced cooperatively, i.e., the processing code calls check() between its steps,
+ * which throws TimeBudgetExceededException once a deadline has passed;
+ * the steps are thus to be kept short, e.g., by tagging a long sentence again in chunks,
+ * and a step that still overruns, e.g., a classifier stuck on a pathological chunk, is reported by a Watchdog.
+ *
+ * A budget of 0 means no limit.
+ *
+ * **/
+
+public class TimeBudget {
+
+	private final long docBudgetNanos;
+	private final long sentenceBudgetNanos;
+
+	//the document being processed, null if none
+	private volatile String docId = null;
+	private volatile Thread owner = null;
+	private volatile long docStart;
+	private volatile long sentenceStart;
+	//whether the watchdog has reported the current document
+	private volatile boolean reported = false;
+
+	public TimeBudget(long docBudgetMillis, long sentenceBudgetMillis){
+		this.docBudgetNanos = docBudgetMillis*1000000L;
+		this.sentenceBudgetNanos = sentenceBudgetMillis*1000000L;
+	}
+
+	public void startDocument(String docId){
+		this.owner = Thread.currentThread();
+		this.docStart = this.sentenceStart = System.nanoTime();
+		this.reported = false;
+		this.docId = docId;
+	}
+
+	public void startSentence(){
+		this.sentenceStart = System.nanoTime();
+	}
+
+	public void finishDocument(){
+		this.docId = null;
+	}
+
+	/**
+	 * @throws TimeBudgetExceededException if the budget of the current document or sentence is used up
+	 * **/
+	public void check(){
+		if(null == docId){
+			return;
+		}
+
+		long now = System.nanoTime();
+
+		if(docBudgetNanos > 0 && now-docStart > docBudgetNanos){
+			throw new TimeBudgetExceededException("Document over time budget ("+docBudgetNanos/1000000L+" ms)");
+		}
+		if(sentenceBudgetNanos > 0 && now-sentenceStart > sentenceBudgetNanos){
+			throw new TimeBudgetExceededException("Sentence over time budget ("+sentenceBudgetNanos/1000000L+" ms)");
+		}
+	}
+
+	/**
+	 * @return whether a deadline has passed while the document is still being processed
+	 * **/
+	boolean isOverdue(long now){
+		return null != docId
+				&& ((docBudgetNanos > 0 && now-docStart > docBudgetNanos) || (sentenceBudgetNanos > 0 && now-sentenceStart > sentenceBudgetNanos));
+	}
+
+	String getDocId(){
+		return docId;
+	}
+
+	Thread getOwner(){
+		return owner;
+	}
+
+	long getElapsedMillis(long now){
+		return (now-docStart)/1000000L;
+	}
+
+	boolean isReported(){
+		return reported;
+	}
+
+	void setReported(){
+		reported = true;
+	}
+}
@@ -0,0 +1,13 @@
+package org.archive.util.time;
+
+/**
+ * Thrown by TimeBudget.check() once the time budget of the current document or sentence is used up
+ * **/
+public class TimeBudgetExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public TimeBudgetExceededException(String message){
+		super(message);
+	}
+}
@@ -0,0 +1,81 @@
+package org.archive.util.time;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Function:
+ *
+ * A background thread that periodically looks at the watched time budgets,
+ * and reports (once per document) a thread that is still busy after a deadline has passed without reaching a check(),
+ * together with where it is stuck, e.g., in the CRF segmenter.
+ *
+ * **/
+
+public class Watchdog {
+
+	private final long intervalMillis;
+	private final CopyOnWriteArrayList<TimeBudget> budgetList = new CopyOnWriteArrayList<TimeBudget>();
+	private Thread watchThread = null;
+
+	//the number of stack frames reported
+	private static final int reportedFrames = 8;
+
+	public Watchdog(long intervalMillis){
+		this.intervalMillis = Math.max(1, intervalMillis);
+	}
+
+	public void watch(TimeBudget budget){
+		budgetList.add(budget);
+	}
+
+	public synchronized void start(){
+		if(null != watchThread){
+			return;
+		}
+
+		watchThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while(!Thread.currentThread().isInterrupted()){
+						Thread.sleep(intervalMillis);
+						scan();
+					}
+				} catch (InterruptedException e) {
+					//stopped
+				}
+			}
+		}, "SogouWatchdog");
+
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+
+	public synchronized void stop(){
+		if(null != watchThread){
+			watchThread.interrupt();
+			watchThread = null;
+		}
+	}
+
+	private void scan(){
+		long now = System.nanoTime();
+
+		for(TimeBudget budget: budgetList){
+			String docId = budget.getDocId();
+			if(budget.isOverdue(now) && !budget.isReported()){
+				budget.setReported();
+
+				Thread owner = budget.getOwner();
+				StringBuffer report = new StringBuffer();
+				report.append("Over time budget:\t"+docId+"\t"+budget.getElapsedMillis(now)+" ms\tin "+owner.getName());
+
+				StackTraceElement [] frames = owner.getStackTrace();
+				for(int i=0; i<frames.length && i<reportedFrames; i++){
+					report.append(System.getProperty("line.separator")).append("\tat ").append(frames[i]);
+				}
+
+				System.err.println(report.toString());
+			}
+		}
+	}
+}